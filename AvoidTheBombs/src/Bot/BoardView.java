@@ -0,0 +1,83 @@
+/*
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package Bot;
+
+import Model.Cell;
+import Model.MineField;
+
+/**
+ * What a player can see of a game: the size of the board, how many mines it
+ * has and the numbers and flags shown on it. Strategies are given this rather
+ * than the MineField itself, so they can't look at where the mines are.
+ *
+ * Cells are numbered row * columns + col.
+ */
+public final class BoardView {
+
+    private final Cell[][] cells;
+    private final int rows;
+    private final int cols;
+    private final int mines;
+
+    BoardView(MineField mineField) {
+        cells = mineField.getMineFieldArray();
+        rows = mineField.getRows();
+        cols = mineField.getColumns();
+        mines = mineField.getNumberOfMines();
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return cols;
+    }
+
+    public int getNumberOfCells() {
+        return rows * cols;
+    }
+
+    public int getNumberOfMines() {
+        return mines;
+    }
+
+    public boolean isRevealed(int cell) {
+        return cells[cell / cols][cell % cols].alreadyClicked();
+    }
+
+    /**
+     * The number shown on a revealed cell.
+     *
+     * @param cell the cell.
+     * @return how many of the cell's neighbours are mines.
+     * @throws IllegalStateException if the cell hasn't been revealed.
+     */
+    public int getNumber(int cell) {
+        Cell revealed = cells[cell / cols][cell % cols];
+        if (!revealed.alreadyClicked()) {
+            throw new IllegalStateException("Cell " + cell + " hasn't been revealed");
+        }
+        return revealed.getNeighbourCount();
+    }
+
+    public boolean isFlagged(int cell) {
+        return cells[cell / cols][cell % cols].isFlagged();
+    }
+
+    public boolean isQuestioned(int cell) {
+        return cells[cell / cols][cell % cols].isQuestioned();
+    }
+}
@@ -0,0 +1,139 @@
+/*
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package Bot;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Uses the single-number rules a human would: if a revealed cell already
+ * touches as many known mines as it shows, its other neighbours are safe, and
+ * if it has exactly as many unknown neighbours as mines left, they are all
+ * mines. When nothing can be deduced a random unknown cell is clicked.
+ */
+public class DeductionStrategy implements Strategy {
+
+    protected final Random random;
+    protected boolean[] knownMine;
+    private final ArrayDeque<Integer> safeCells;
+
+    public DeductionStrategy(long seed) {
+        random = new Random(seed);
+        safeCells = new ArrayDeque<>();
+    }
+
+    @Override
+    public int chooseCell(BoardView board) {
+        if (knownMine == null) {
+            knownMine = new boolean[board.getNumberOfCells()];
+        }
+
+        int safe = nextSafeCell(board);
+        if (safe < 0) {
+            deduce(board);
+            safe = nextSafeCell(board);
+        }
+        return safe >= 0 ? safe : guess(board);
+    }
+
+    /**
+     * Picks a cell when no cell is known to be safe.
+     *
+     * @param board the game being played.
+     * @return an unknown cell.
+     */
+    protected int guess(BoardView board) {
+        int cell;
+        do {
+            cell = random.nextInt(board.getNumberOfCells());
+        } while (!isUnknown(board, cell));
+        return cell;
+    }
+
+    /**
+     * Whether a cell is neither revealed nor known to be a mine.
+     */
+    protected boolean isUnknown(BoardView board, int cell) {
+        return !board.isRevealed(cell) && !knownMine[cell];
+    }
+
+    /**
+     * Collects the neighbours of a cell which are neither revealed nor known
+     * to be mines, and returns how many neighbours are known mines.
+     */
+    protected int unknownNeighbours(BoardView board, int cell, List<Integer> unknown) {
+        int cols = board.getColumns();
+        int row = cell / cols;
+        int col = cell % cols;
+        int mines = 0;
+        unknown.clear();
+        for (int r = Math.max(0, row - 1); r <= Math.min(board.getRows() - 1, row + 1); r++) {
+            for (int c = Math.max(0, col - 1); c <= Math.min(cols - 1, col + 1); c++) {
+                int neighbour = r * cols + c;
+                if (board.isRevealed(neighbour)) {
+                    continue;
+                }
+                if (knownMine[neighbour]) {
+                    mines++;
+                } else {
+                    unknown.add(neighbour);
+                }
+            }
+        }
+        return mines;
+    }
+
+    private int nextSafeCell(BoardView board) {
+        while (!safeCells.isEmpty()) {
+            int cell = safeCells.poll();
+            if (!board.isRevealed(cell)) {
+                return cell;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Applies the single-number rules to every revealed cell until no new
+     * mines are found or a safe cell turns up.
+     */
+    private void deduce(BoardView board) {
+        List<Integer> unknown = new ArrayList<>(8);
+        boolean progress = true;
+
+        while (progress && safeCells.isEmpty()) {
+            progress = false;
+            for (int cell = 0; cell < board.getNumberOfCells(); cell++) {
+                if (!board.isRevealed(cell)) {
+                    continue;
+                }
+                int mines = unknownNeighbours(board, cell, unknown);
+                if (unknown.isEmpty()) {
+                    continue;
+                }
+                if (mines == board.getNumber(cell)) {
+                    safeCells.addAll(unknown);
+                } else if (board.getNumber(cell) - mines == unknown.size()) {
+                    for (int mine : unknown) {
+                        knownMine[mine] = true;
+                    }
+                    progress = true;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,368 @@
+/*
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package Bot;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Deduces like DeductionStrategy, but instead of guessing at random it works
+ * out the chance of every unknown cell being a mine and clicks the safest
+ * one.
+ *
+ * Every revealed number bordering unknown cells gives a constraint: so many
+ * of those cells are mines. The unknown cells bordering numbers (the
+ * frontier) are split into groups which share no constraints, and every
+ * arrangement of mines in each group which meets all of its constraints is
+ * counted, by the number of mines it uses. Any other unknown cell could be a
+ * mine as well as any other, so a way of placing t mines on the frontier
+ * leaves C(others, mines left - t) ways of placing the rest. Weighting the
+ * frontier arrangements by that gives the exact chance of each cell being a
+ * mine, given what can be seen and the number of mines.
+ *
+ * Counting is exponential in the size of a group, so a group with more than
+ * MAX_STEPS arrangements to try is treated as though it bordered no numbers.
+ */
+public class ProbabilityStrategy extends DeductionStrategy {
+
+    private static final int MAX_STEPS = 1 << 20;
+    private static final double EPSILON = 1e-12;
+
+    private int steps;
+
+    public ProbabilityStrategy(long seed) {
+        super(seed);
+    }
+
+    @Override
+    protected int guess(BoardView board) {
+        int cells = board.getNumberOfCells();
+        int[] group = new int[cells]; // union-find parent of frontier cells, -1 off the frontier
+        Arrays.fill(group, -1);
+        List<int[]> constraints = new ArrayList<>(); // the cells, then the mines they hold
+        List<Integer> unknown = new ArrayList<>(8);
+        int unknownCells = 0;
+        int knownMines = 0;
+
+        for (int cell = 0; cell < cells; cell++) {
+            if (!board.isRevealed(cell)) {
+                if (knownMine[cell]) {
+                    knownMines++;
+                } else {
+                    unknownCells++;
+                }
+                continue;
+            }
+            int mines = unknownNeighbours(board, cell, unknown);
+            if (unknown.isEmpty()) {
+                continue;
+            }
+            int[] constraint = new int[unknown.size() + 1];
+            for (int i = 0; i < unknown.size(); i++) {
+                constraint[i] = unknown.get(i);
+                if (group[constraint[i]] < 0) {
+                    group[constraint[i]] = constraint[i];
+                }
+                union(group, constraint[0], constraint[i]);
+            }
+            constraint[unknown.size()] = board.getNumber(cell) - mines;
+            constraints.add(constraint);
+        }
+
+        int minesLeft = board.getNumberOfMines() - knownMines;
+        List<Group> groups = new ArrayList<>();
+        int[] groupOf = new int[cells];
+        for (int cell = 0; cell < cells; cell++) {
+            if (group[cell] >= 0 && find(group, cell) == cell) {
+                groupOf[cell] = groups.size();
+                groups.add(new Group());
+            }
+        }
+        for (int[] constraint : constraints) {
+            groups.get(groupOf[find(group, constraint[0])]).constraints.add(constraint);
+        }
+
+        int others = unknownCells;
+        List<Group> counted = new ArrayList<>();
+        for (Group g : groups) {
+            if (g.count(minesLeft)) {
+                counted.add(g);
+                others -= g.cells.length;
+            }
+        }
+
+        double[] weight = weights(others, minesLeft);
+        double[] all = convolve(counted, null, minesLeft);
+        double total = 0;
+        double expectedOthers = 0;
+        for (int t = 0; t < all.length; t++) {
+            total += all[t] * weight[t];
+            expectedOthers += all[t] * weight[t] * (minesLeft - t);
+        }
+        if (total == 0) { // the board can't be explained, which shouldn't happen
+            return super.guess(board);
+        }
+
+        double[] chance = new double[cells];
+        Arrays.fill(chance, others > 0 ? expectedOthers / total / others : 1);
+        for (Group g : counted) {
+            double[] rest = convolve(counted, g, minesLeft);
+            double[] given = new double[g.ways.length]; // weight of the rest given k mines in g
+            for (int k = 0; k < given.length; k++) {
+                for (int t = 0; t < rest.length && k + t < weight.length; t++) {
+                    given[k] += rest[t] * weight[k + t];
+                }
+            }
+            for (int i = 0; i < g.cells.length; i++) {
+                double p = 0;
+                for (int k = 0; k < given.length; k++) {
+                    p += g.mineWays[i][k] * given[k];
+                }
+                chance[g.cells[i]] = p / total;
+                if (chance[g.cells[i]] > 1 - EPSILON) {
+                    knownMine[g.cells[i]] = true;
+                }
+            }
+        }
+
+        int best = -1;
+        double bestChance = Double.MAX_VALUE;
+        int ties = 0;
+        for (int cell = 0; cell < cells; cell++) {
+            if (!isUnknown(board, cell)) {
+                continue;
+            }
+            if (chance[cell] < bestChance - EPSILON) {
+                best = cell;
+                bestChance = chance[cell];
+                ties = 1;
+            } else if (chance[cell] <= bestChance + EPSILON && random.nextInt(++ties) == 0) {
+                best = cell;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * The number of ways, relative to each other, of placing the mines left
+     * over the cells off the frontier, by the number of mines on the
+     * frontier.
+     */
+    private static double[] weights(int others, int minesLeft) {
+        double[] logFactorial = new double[others + 1];
+        for (int n = 2; n <= others; n++) {
+            logFactorial[n] = logFactorial[n - 1] + Math.log(n);
+        }
+        double[] weight = new double[minesLeft + 1];
+        double max = Double.NEGATIVE_INFINITY;
+        for (int t = 0; t <= minesLeft; t++) {
+            int rest = minesLeft - t;
+            weight[t] = rest <= others
+                    ? logFactorial[others] - logFactorial[rest] - logFactorial[others - rest]
+                    : Double.NEGATIVE_INFINITY;
+            max = Math.max(max, weight[t]);
+        }
+        for (int t = 0; t <= minesLeft; t++) {
+            weight[t] = Math.exp(weight[t] - max);
+        }
+        return weight;
+    }
+
+    /**
+     * Combines the arrangements of all counted groups but one into the
+     * number of ways of placing t mines on them.
+     */
+    private static double[] convolve(List<Group> groups, Group skip, int minesLeft) {
+        double[] ways = {1};
+        for (Group g : groups) {
+            if (g == skip) {
+                continue;
+            }
+            double[] next = new double[Math.min(ways.length + g.ways.length - 1, minesLeft + 1)];
+            for (int a = 0; a < ways.length; a++) {
+                for (int b = 0; b < g.ways.length && a + b < next.length; b++) {
+                    next[a + b] += ways[a] * g.ways[b];
+                }
+            }
+            ways = next;
+        }
+        return ways;
+    }
+
+    private static int find(int[] parent, int cell) {
+        while (parent[cell] != cell) {
+            parent[cell] = parent[parent[cell]];
+            cell = parent[cell];
+        }
+        return cell;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        parent[find(parent, a)] = find(parent, b);
+    }
+
+    /**
+     * Frontier cells sharing constraints, and the arrangements of mines on
+     * them.
+     */
+    private class Group {
+
+        final List<int[]> constraints = new ArrayList<>();
+        int[] cells; // in the order they are assigned
+        int[][] cellConstraints;
+        int[] placed; // mines placed so far in each constraint
+        int[] open; // cells not yet assigned in each constraint
+        boolean[] mine;
+        double[] ways; // arrangements by number of mines
+        double[][] mineWays; // arrangements with the cell a mine, by number of mines
+
+        /**
+         * Counts the arrangements of mines in the group.
+         *
+         * @return false if there were too many to count.
+         */
+        boolean count(int minesLeft) {
+            order();
+            placed = new int[constraints.size()];
+            open = new int[constraints.size()];
+            for (int c = 0; c < constraints.size(); c++) {
+                open[c] = constraints.get(c).length - 1;
+            }
+            mine = new boolean[cells.length];
+            ways = new double[Math.min(cells.length, minesLeft) + 1];
+            mineWays = new double[cells.length][ways.length];
+            steps = 0;
+            if (!assign(0, 0)) {
+                return false;
+            }
+
+            double max = 0; // scale so many groups can be multiplied without overflow
+            for (double w : ways) {
+                max = Math.max(max, w);
+            }
+            if (max == 0) {
+                return false;
+            }
+            for (int k = 0; k < ways.length; k++) {
+                ways[k] /= max;
+                for (double[] cellWays : mineWays) {
+                    cellWays[k] /= max;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Orders the cells breadth first through the constraints, so that
+         * constraints are filled in, and bad arrangements cut off, early.
+         */
+        private void order() {
+            List<Integer> ordered = new ArrayList<>();
+            List<List<Integer>> inConstraints = new ArrayList<>();
+            Map<Integer, Integer> index = new HashMap<>();
+            for (int c = 0; c < constraints.size(); c++) {
+                int[] constraint = constraints.get(c);
+                for (int i = 0; i < constraint.length - 1; i++) {
+                    if (!index.containsKey(constraint[i])) {
+                        index.put(constraint[i], index.size());
+                        inConstraints.add(new ArrayList<>());
+                    }
+                    inConstraints.get(index.get(constraint[i])).add(c);
+                }
+            }
+
+            boolean[] seen = new boolean[constraints.size()];
+            boolean[] added = new boolean[index.size()];
+            ArrayDeque<Integer> queue = new ArrayDeque<>();
+            queue.add(0);
+            seen[0] = true;
+            while (!queue.isEmpty()) {
+                int[] constraint = constraints.get(queue.poll());
+                for (int i = 0; i < constraint.length - 1; i++) {
+                    int local = index.get(constraint[i]);
+                    if (added[local]) {
+                        continue;
+                    }
+                    added[local] = true;
+                    ordered.add(constraint[i]);
+                    for (int c : inConstraints.get(local)) {
+                        if (!seen[c]) {
+                            seen[c] = true;
+                            queue.add(c);
+                        }
+                    }
+                }
+            }
+
+            cells = new int[ordered.size()];
+            cellConstraints = new int[cells.length][];
+            for (int i = 0; i < cells.length; i++) {
+                cells[i] = ordered.get(i);
+                List<Integer> in = inConstraints.get(index.get(cells[i]));
+                cellConstraints[i] = new int[in.size()];
+                for (int j = 0; j < in.size(); j++) {
+                    cellConstraints[i][j] = in.get(j);
+                }
+            }
+        }
+
+        /**
+         * Tries both values of the next cell and counts every complete
+         * arrangement.
+         *
+         * @return false if the step limit was reached.
+         */
+        private boolean assign(int next, int mines) {
+            if (next == cells.length) {
+                steps += cells.length;
+                ways[mines]++;
+                for (int i = 0; i < cells.length; i++) {
+                    if (mine[i]) {
+                        mineWays[i][mines]++;
+                    }
+                }
+                return true;
+            }
+            if (++steps > MAX_STEPS) {
+                return false;
+            }
+            for (int value = 0; value <= 1 && mines + value < ways.length; value++) {
+                mine[next] = value == 1;
+                boolean possible = true;
+                for (int c : cellConstraints[next]) {
+                    placed[c] += value;
+                    open[c]--;
+                    int needed = constraints.get(c)[constraints.get(c).length - 1];
+                    possible &= placed[c] <= needed && placed[c] + open[c] >= needed;
+                }
+                boolean finished = !possible || assign(next + 1, mines + value);
+                for (int c : cellConstraints[next]) {
+                    placed[c] -= value;
+                    open[c]++;
+                }
+                if (!finished) {
+                    mine[next] = false;
+                    return false;
+                }
+            }
+            mine[next] = false;
+            return true;
+        }
+    }
+}
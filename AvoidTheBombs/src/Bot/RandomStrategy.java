@@ -0,0 +1,38 @@
+/*
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package Bot;
+
+import java.util.Random;
+
+/**
+ * Clicks cells which haven't been clicked yet at random.
+ */
+public class RandomStrategy implements Strategy {
+
+    private final Random random;
+
+    public RandomStrategy(long seed) {
+        random = new Random(seed);
+    }
+
+    @Override
+    public int chooseCell(BoardView board) {
+        int cell;
+        do {
+            cell = random.nextInt(board.getNumberOfCells());
+        } while (board.isRevealed(cell));
+        return cell;
+    }
+}
@@ -0,0 +1,31 @@
+/*
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package Bot;
+
+/**
+ * A player bot. A new Strategy is created for every game, so implementations
+ * may keep state about the game they are playing.
+ */
+public interface Strategy {
+
+    /**
+     * Chooses the next cell to left-click. The cell must not have been
+     * revealed already.
+     *
+     * @param board what the player can see of the game being played.
+     * @return the number of the cell to reveal, row * columns + col.
+     */
+    int chooseCell(BoardView board);
+}
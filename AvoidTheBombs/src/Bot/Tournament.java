@@ -0,0 +1,310 @@
+/*
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package Bot;
+
+import Model.Cell;
+import Model.MineField;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.LongFunction;
+
+/**
+ * Plays every strategy against every board configuration and reports win
+ * rate, moves per second and move latency percentiles. Games are spread over
+ * a work-stealing pool. Every game's board and strategy are seeded from the
+ * tournament seed, the board and the game number only, so the outcome of a
+ * tournament is the same no matter how many threads play it, and all
+ * strategies play the same boards.
+ *
+ * Run from the command line with: seed, games per board and optionally the
+ * number of threads (all cores by default).
+ */
+public class Tournament {
+
+    private static final int GAMES_PER_TASK = 4;
+
+    private final long seed;
+    private final int gamesPerBoard;
+    private final List<String> strategyNames;
+    private final List<LongFunction<Strategy>> strategies;
+    private final List<int[]> boards; // rows, cols, mines
+
+    public Tournament(long seed, int gamesPerBoard) {
+        this.seed = seed;
+        this.gamesPerBoard = gamesPerBoard;
+        strategyNames = new ArrayList<>();
+        strategies = new ArrayList<>();
+        boards = new ArrayList<>();
+    }
+
+    /**
+     * Adds a strategy to the tournament.
+     *
+     * @param name the name used in the results.
+     * @param factory creates a new strategy for a game from a seed.
+     */
+    public void addStrategy(String name, LongFunction<Strategy> factory) {
+        strategyNames.add(name);
+        strategies.add(factory);
+    }
+
+    /**
+     * Adds a board configuration every strategy will play.
+     *
+     * @param rows the number of rows.
+     * @param cols the number of columns.
+     * @param mines the number of mines.
+     */
+    public void addBoard(int rows, int cols, int mines) {
+        boards.add(new int[]{rows, cols, mines});
+    }
+
+    /**
+     * Plays all games on the given pool.
+     *
+     * @param pool the pool to play the games on.
+     * @return one result per strategy and board, strategies first.
+     */
+    public List<Result> run(ForkJoinPool pool) {
+        int games = strategies.size() * boards.size() * gamesPerBoard;
+        GameResult[] gameResults = new GameResult[games];
+        pool.invoke(new PlayGames(gameResults, 0, games));
+
+        List<Result> results = new ArrayList<>();
+        for (int s = 0; s < strategies.size(); s++) {
+            for (int b = 0; b < boards.size(); b++) {
+                int first = (s * boards.size() + b) * gamesPerBoard;
+                results.add(new Result(strategyNames.get(s), boards.get(b),
+                        Arrays.copyOfRange(gameResults, first, first + gamesPerBoard)));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Plays a single game. The game number runs over strategies, then boards,
+     * then games.
+     */
+    private GameResult play(int game) {
+        int strategy = game / (boards.size() * gamesPerBoard);
+        int board = game / gamesPerBoard % boards.size();
+        long gameSeed = mix(seed, board, game % gamesPerBoard);
+        int[] config = boards.get(board);
+
+        MineField mineField = new MineField(config[0], config[1], config[2], gameSeed);
+        Strategy player = strategies.get(strategy).apply(mix(gameSeed, strategy, 0));
+        BoardView view = new BoardView(mineField);
+        Cell[][] cells = mineField.getMineFieldArray();
+        long[] latencies = new long[16];
+        int moves = 0;
+        boolean won = false;
+
+        long start = System.nanoTime();
+        while (true) {
+            long moveStart = System.nanoTime();
+            int chosen = player.chooseCell(view);
+            Cell cell = cells[chosen / config[1]][chosen % config[1]];
+            List<Cell> revealed = mineField.reveal(cell);
+            if (revealed.isEmpty()) {
+                throw new IllegalStateException("Strategy chose a cell which was already revealed");
+            }
+            if (moves == latencies.length) {
+                latencies = Arrays.copyOf(latencies, moves * 2);
+            }
+            latencies[moves++] = System.nanoTime() - moveStart;
+
+            if (cell.getState() == 1) {
+                break;
+            } else if (mineField.isCleared()) {
+                won = true;
+                break;
+            }
+        }
+        return new GameResult(won, moves, System.nanoTime() - start, Arrays.copyOf(latencies, moves));
+    }
+
+    /**
+     * Mixes a seed with two numbers into a new, well spread seed.
+     */
+    private static long mix(long seed, long a, long b) {
+        long z = seed + a * 0x9E3779B97F4A7C15L + b * 0xC2B2AE3D27D4EB4FL;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Splits a range of games in half until it is small enough to play.
+     */
+    private class PlayGames extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final GameResult[] results;
+        private final int from;
+        private final int to;
+
+        PlayGames(GameResult[] results, int from, int to) {
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= GAMES_PER_TASK) {
+                for (int game = from; game < to; game++) {
+                    results[game] = play(game);
+                }
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new PlayGames(results, from, middle), new PlayGames(results, middle, to));
+            }
+        }
+    }
+
+    private static class GameResult {
+
+        final boolean won;
+        final int moves;
+        final long nanos;
+        final long[] latencies;
+
+        GameResult(boolean won, int moves, long nanos, long[] latencies) {
+            this.won = won;
+            this.moves = moves;
+            this.nanos = nanos;
+            this.latencies = latencies;
+        }
+    }
+
+    /**
+     * The combined results of one strategy on one board configuration.
+     */
+    public static class Result {
+
+        private final String strategy;
+        private final int[] board;
+        private final int games;
+        private final int wins;
+        private final long moves;
+        private final long nanos;
+        private final long[] latencies; // sorted
+
+        Result(String strategy, int[] board, GameResult[] gameResults) {
+            this.strategy = strategy;
+            this.board = board;
+            games = gameResults.length;
+            int won = 0;
+            long totalMoves = 0;
+            long totalNanos = 0;
+            for (GameResult game : gameResults) {
+                won += game.won ? 1 : 0;
+                totalMoves += game.moves;
+                totalNanos += game.nanos;
+            }
+            wins = won;
+            moves = totalMoves;
+            nanos = totalNanos;
+
+            latencies = new long[(int) totalMoves];
+            int i = 0;
+            for (GameResult game : gameResults) {
+                System.arraycopy(game.latencies, 0, latencies, i, game.latencies.length);
+                i += game.latencies.length;
+            }
+            Arrays.sort(latencies);
+        }
+
+        public String getStrategy() {
+            return strategy;
+        }
+
+        public int getWins() {
+            return wins;
+        }
+
+        public double getWinRate() {
+            return games == 0 ? 0 : (double) wins / games;
+        }
+
+        /**
+         * Moves per second of time spent playing, on a single thread.
+         *
+         * @return the number of moves made per second.
+         */
+        public double getMovesPerSecond() {
+            return nanos == 0 ? 0 : moves * 1e9 / nanos;
+        }
+
+        /**
+         * The move latency at the given percentile.
+         *
+         * @param percentile a number between 0 and 100.
+         * @return the latency in nanoseconds.
+         */
+        public long getLatencyPercentile(double percentile) {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile / 100 * latencies.length) - 1;
+            return latencies[Math.max(0, Math.min(latencies.length - 1, index))];
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-12s %5dx%-5d %6d  %6.1f%%  %12.0f  %9.1f %9.1f %9.1f",
+                    strategy, board[0], board[1], board[2], getWinRate() * 100, getMovesPerSecond(),
+                    getLatencyPercentile(50) / 1000.0, getLatencyPercentile(90) / 1000.0,
+                    getLatencyPercentile(99) / 1000.0);
+        }
+    }
+
+    /**
+     * @param args seed, games per board and optionally the number of threads.
+     */
+    public static void main(String[] args) {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+        int games = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int threads = args.length > 2 ? Integer.parseInt(args[2])
+                : Runtime.getRuntime().availableProcessors();
+
+        Tournament tournament = new Tournament(seed, games);
+        tournament.addStrategy("random", RandomStrategy::new);
+        tournament.addStrategy("deduction", DeductionStrategy::new);
+        tournament.addStrategy("probability", ProbabilityStrategy::new);
+        tournament.addBoard(9, 9, 10);
+        tournament.addBoard(16, 16, 40);
+        tournament.addBoard(16, 30, 99);
+        tournament.addBoard(20, 20, 10);
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long start = System.nanoTime();
+        List<Result> results = tournament.run(pool);
+        long elapsed = System.nanoTime() - start;
+        pool.shutdown();
+
+        System.out.printf("%-12s %11s %6s  %7s  %12s  %9s %9s %9s%n", "strategy", "board", "mines",
+                "win", "moves/s", "p50 us", "p90 us", "p99 us");
+        for (Result result : results) {
+            System.out.println(result);
+        }
+        System.out.printf("%d games on %d threads in %.2f s%n",
+                games * results.size(), threads, elapsed / 1e9);
+    }
+}
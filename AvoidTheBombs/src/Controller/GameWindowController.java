@@ -14,12 +14,20 @@
  */
 package Controller;
 
+import Model.BoardImageExporter;
 import Model.Cell;
+import Model.GameArchive;
 import Model.MineField;
+import Model.SpectatorServer;
+import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Optional;
 import java.util.ResourceBundle;
+import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
@@ -30,10 +38,12 @@ import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.Button;
 import javafx.scene.control.ButtonType;
 import javafx.scene.control.Label;
+import javafx.scene.control.TextArea;
 import javafx.scene.image.Image;
 import javafx.scene.input.MouseButton;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.GridPane;
+import javafx.stage.FileChooser;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 
@@ -50,7 +60,12 @@ public class GameWindowController implements Initializable {
     private String question = "?";
     private boolean gameOver;
     private boolean win;
+    private boolean recorded; // the game has been added to the archive
     private Cell[][] boardArray;
+    private SpectatorServer spectatorServer;
+    private GameArchive gameArchive;
+    private long gameStart;
+    private int moves;
 
     @FXML
     private Label label;
@@ -60,6 +75,11 @@ public class GameWindowController implements Initializable {
 
     @Override
     public void initialize(URL url, ResourceBundle rb) {
+        try {
+            gameArchive = new GameArchive(new File(System.getProperty("user.home"), ".avoidthebombs"));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
         newGame();
     }
 
@@ -82,7 +102,13 @@ public class GameWindowController implements Initializable {
         buttonArray = new Button[mineField.getRows()][mineField.getColumns()];
         gameOver = false;
         win = false;
+        recorded = false;
+        gameStart = System.currentTimeMillis();
+        moves = 0;
         generateBoard();
+        if (spectatorServer != null) {
+            spectatorServer.setMineField(mineField);
+        }
     }
 
     /**
@@ -117,8 +143,12 @@ public class GameWindowController implements Initializable {
      */
     private void mouseClickOnCell(Cell cell, Button button, MouseEvent event) {
         if (!gameOver && !win) { // ensure the game is still on
-            if (event.getButton() == MouseButton.PRIMARY) { // left click
-                triggerCell(cell, button);
+            if (event.getButton() == MouseButton.PRIMARY && cell.alreadyClicked()) { // left click on a number
+                showRevealedCells(mineField.chord(cell));
+            } else if (event.getButton() == MouseButton.PRIMARY) { // left click
+                showRevealedCells(mineField.reveal(cell));
+            } else if (event.getButton() == MouseButton.MIDDLE) { // middle click
+                showRevealedCells(mineField.chord(cell));
             } else if (event.getButton() == MouseButton.SECONDARY) { // right click
                 toggleProtectedCellState(cell, button);
             }
@@ -126,81 +156,48 @@ public class GameWindowController implements Initializable {
             showYouDiedAlert();
         }
 
-        // check to see if player won.
-        if (mineField.getNumberCleared() == (mineField.getNumberOfCells() - mineField.getNumberOfMines())) {
+        // check to see if player won. A chord can open a mine and the last
+        // safe cells in one move, which is a loss.
+        if (!gameOver
+                && mineField.getNumberCleared() == (mineField.getNumberOfCells() - mineField.getNumberOfMines())) {
             win = true;
+            recordGame(true);
             showYouWinAlert();
         }
     }
 
     /**
-     * Handle left-click events
+     * Update the board after a move revealed cells, all in one go. If one of
+     * the cells is a mine, the game is over.
      *
-     * @param cell the cell which was clicked.
-     * @param button the button which represented the cell on the board.
+     * @param revealed the cells revealed by the move.
      */
-    private void triggerCell(Cell cell, Button button) {
-        if (!cell.alreadyClicked() && !cell.isFlagged() && !cell.isQuestioned()) { // ensure this is first left-click
-            cell.setClicked();
-            if (cell.getState() == 1) { // cell is a mine
-                showAllMines();
-                gameOver = true;
-                showYouDiedAlert();
-            } else if (cell.getNeighbourCount() != 0) { // cell is not a mine but does neighbour to one
-                button.setText(String.valueOf(cell.getNeighbourCount()));
-                button.setStyle("-fx-background-color: #FFFFFF; -fx-border-color: #000000");
-                mineField.increaseNumberCleared();
-            } else { // cell is not a mine and also doesn't neighbour to any.
-                emptyCell(cell);
-                button.setStyle("-fx-background-color: #FFFFFF; -fx-border-color: #000000");
-            }
+    private void showRevealedCells(List<Cell> revealed) {
+        if (revealed.isEmpty()) { // nothing could be revealed
+            return;
         }
-    }
-
-    /**
-     * An empty cell with no neighbouring mines has been clicked. Recursion is
-     * used to reveal all neighbouring cells which also have no neighbouring
-     * mines.
-     */
-    private void emptyCell(Cell cell) {
-        mineField.increaseNumberCleared();
-        int row = cell.getRow();
-        int col = cell.getCol();
-
-        if (cell.getState() == 0 && cell.getNeighbourCount() == 0) {
-            cell.setClicked();
-            buttonArray[row][col].setStyle("-fx-background-color: #FFFFFF; -fx-border-color: #000000");
-            Cell tmpCell;
-
-            if (row - 1 >= 0) {
-                tmpCell = boardArray[row - 1][col];
-                if (tmpCell.getState() == 0 && tmpCell.getNeighbourCount() == 0 && !tmpCell.alreadyClicked()) {
-                    emptyCell(tmpCell);
-                }
-            }
-
-            if (row + 1 < mineField.getRows()) {
-                tmpCell = boardArray[row + 1][col];
-                if (tmpCell.getState() == 0 && tmpCell.getNeighbourCount() == 0 && !tmpCell.alreadyClicked()) {
-                    emptyCell(tmpCell);
-                }
+        recordMove(revealed);
+        boolean hitMine = false;
+        for (Cell revealedCell : revealed) {
+            if (revealedCell.getState() == 1) { // cell is a mine
+                hitMine = true;
+                continue;
             }
-
-            if (col + 1 < mineField.getColumns()) {
-                tmpCell = boardArray[row][col + 1];
-                if (tmpCell.getState() == 0 && tmpCell.getNeighbourCount() == 0 && !tmpCell.alreadyClicked()) {
-                    emptyCell(tmpCell);
-                }
+            Button revealedButton = buttonArray[revealedCell.getRow()][revealedCell.getCol()];
+            if (revealedCell.getNeighbourCount() != 0) { // cell neighbours to a mine
+                revealedButton.setText(String.valueOf(revealedCell.getNeighbourCount()));
             }
-
-            if (col - 1 >= 0) {
-                tmpCell = boardArray[row][col - 1];
-                if (tmpCell.getState() == 0 && tmpCell.getNeighbourCount() == 0 && !tmpCell.alreadyClicked()) {
-                    emptyCell(tmpCell);
-                }
+            revealedButton.setStyle("-fx-background-color: #FFFFFF; -fx-border-color: #000000");
+        }
+        if (hitMine) {
+            showAllMines();
+            if (spectatorServer != null) {
+                spectatorServer.publishMines();
             }
+            gameOver = true;
+            recordGame(false);
+            showYouDiedAlert();
         }
-
     }
 
     /**
@@ -213,7 +210,8 @@ public class GameWindowController implements Initializable {
      */
     private void toggleProtectedCellState(Cell cell, Button button) {
         if (!cell.alreadyClicked()) {
-            cell.toggleProtected();
+            mineField.toggleProtected(cell);
+            recordMove(Collections.singletonList(cell));
             if (cell.isFlagged()) {
                 button.setText(flag);
             } else if (cell.isQuestioned()) {
@@ -228,14 +226,11 @@ public class GameWindowController implements Initializable {
      * When player dies, we want to show the location of all mines.
      */
     private void showAllMines() {
-        Cell[][] mines = mineField.getMineFieldArray();
-        for (int row = 0; row < mines.length; row++) {
-            for (int col = 0; col < mines.length; col++) {
-                if (mines[row][col].getState() == 1) {
-                    buttonArray[row][col].setText(bomb);
-                    buttonArray[row][col].setStyle("-fx-background-color: #ee5353");
-                }
-            }
+        int cols = mineField.getColumns();
+        for (int position : mineField.getMinePositions()) {
+            Button button = buttonArray[position / cols][position % cols];
+            button.setText(bomb);
+            button.setStyle("-fx-background-color: #ee5353");
         }
     }
 
@@ -246,7 +241,9 @@ public class GameWindowController implements Initializable {
     private void showYouDiedAlert() {
         Alert alert = new Alert(AlertType.CONFIRMATION);
         alert.setHeaderText("Game Over");
-        alert.setContentText("Sorry, you hit a bomb. Would you like to try again?!");
+        alert.setContentText("Sorry, you hit a bomb. You flagged "
+                + mineField.getNumberOfCorrectFlags() + " of "
+                + mineField.getMinePositions().length + " bombs. Would you like to try again?!");
         Optional<ButtonType> result = alert.showAndWait();
         if (result.get() == ButtonType.OK) {
             mineField = new MineField(mineField.getRows(),
@@ -296,4 +293,150 @@ public class GameWindowController implements Initializable {
 
     }
 
+    /**
+     * Start serving the game to spectators on a local socket, or tell the
+     * player where spectators can connect if it's already running.
+     */
+    @FXML
+    private void startSpectating() {
+        if (spectatorServer == null) {
+            try {
+                spectatorServer = new SpectatorServer(SpectatorServer.DEFAULT_PORT);
+                spectatorServer.setMineField(mineField);
+            } catch (IOException e) {
+                Alert alert = new Alert(AlertType.ERROR);
+                alert.setHeaderText("Spectating unavailable");
+                alert.setContentText("Could not open port " + SpectatorServer.DEFAULT_PORT
+                        + ": " + e.getMessage());
+                alert.showAndWait();
+                return;
+            }
+        }
+
+        Alert alert = new Alert(AlertType.INFORMATION);
+        alert.setHeaderText("Spectating");
+        alert.setContentText("Spectators can connect to port " + spectatorServer.getPort()
+                + ". Currently watching: " + spectatorServer.getNumberOfSpectators());
+        alert.showAndWait();
+    }
+
+    /**
+     * Count a move and send the cells it changed to any spectators.
+     *
+     * @param changed the cells which were revealed or had their protected
+     * state changed.
+     */
+    private void recordMove(List<Cell> changed) {
+        moves++;
+        if (spectatorServer != null) {
+            spectatorServer.publishMove(changed);
+        }
+    }
+
+    /**
+     * Add the finished game to the game archive, unless it has been added
+     * already.
+     *
+     * @param won true if the player won the game.
+     */
+    private void recordGame(boolean won) {
+        if (gameArchive == null || recorded) {
+            return;
+        }
+        recorded = true;
+        try {
+            gameArchive.record(mineField, won, System.currentTimeMillis() - gameStart, moves);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Show the win rate for every board size and number of mines played, and
+     * how long won games took.
+     */
+    @FXML
+    private void showStatistics() {
+        StringBuilder text = new StringBuilder();
+        if (gameArchive == null || gameArchive.getNumberOfGames() == 0) {
+            text.append("No finished games yet.");
+        } else {
+            List<GameArchive.Group> groups = gameArchive.getWinRateBySize();
+            groups.sort(Comparator.comparingInt(GameArchive.Group::getRows)
+                    .thenComparingInt(GameArchive.Group::getColumns)
+                    .thenComparingInt(GameArchive.Group::getMines));
+            text.append(String.format("%-11s %7s %7s %8s %8s%n", "Board", "Mines", "Density", "Games", "Won"));
+            for (GameArchive.Group group : groups) {
+                text.append(String.format("%-11s %7d %6.1f%% %8d %7.1f%%%n",
+                        group.getRows() + "x" + group.getColumns(), group.getMines(), group.getDensity(),
+                        group.getGames(), group.getWinRate() * 100));
+            }
+
+            int[] times = gameArchive.getDurationPercentiles(true, 50, 90, 99);
+            if (times[0] >= 0) {
+                text.append(String.format("%nTime to win: median %.1f s, 90%% %.1f s, 99%% %.1f s",
+                        times[0] / 1000.0, times[1] / 1000.0, times[2] / 1000.0));
+            }
+        }
+
+        TextArea textArea = new TextArea(text.toString());
+        textArea.setEditable(false);
+        textArea.setStyle("-fx-font-family: monospace");
+        Alert alert = new Alert(AlertType.INFORMATION);
+        alert.setHeaderText("Statistics");
+        alert.getDialogPane().setContent(textArea);
+        alert.showAndWait();
+    }
+
+    /**
+     * Let the player pick a file and save the current board to it as a PNG
+     * image. Once the game is over all mines are shown in the image. The
+     * image is written on a background thread.
+     */
+    @FXML
+    private void exportImage() {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Export board");
+        fileChooser.setInitialFileName("board.png");
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("PNG image", "*.png"));
+        File file = fileChooser.showSaveDialog(mineFieldGrid.getScene().getWindow());
+        if (file == null) {
+            return;
+        }
+
+        BoardImageExporter exporter;
+        try { // copies the board, so the game can go on while exporting
+            exporter = new BoardImageExporter(mineField, gameOver || win);
+        } catch (IllegalArgumentException e) {
+            showExportError(file, e.getMessage());
+            return;
+        }
+        exporter.setParallel(mineField.getNumberOfCells() > 10000);
+
+        Task<Void> task = new Task<Void>() {
+            @Override
+            protected Void call() throws IOException {
+                exporter.export(file);
+                return null;
+            }
+        };
+        task.setOnSucceeded(event -> {
+            Alert alert = new Alert(AlertType.INFORMATION);
+            alert.setHeaderText("Export finished");
+            alert.setContentText("The board was saved to " + file.getName() + ".");
+            alert.showAndWait();
+        });
+        task.setOnFailed(event -> showExportError(file, task.getException().getMessage()));
+        Thread thread = new Thread(task, "Board export");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void showExportError(File file, String message) {
+        Alert alert = new Alert(AlertType.ERROR);
+        alert.setHeaderText("Export failed");
+        alert.setContentText("Could not write " + file.getName() + ": " + message);
+        alert.showAndWait();
+    }
+
 }
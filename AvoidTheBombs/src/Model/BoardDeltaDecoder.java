@@ -0,0 +1,269 @@
+/*
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package Model;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Rebuilds the board a spectator sees from the frames written by
+ * BoardDeltaEncoder. A keyframe replaces the whole board, a delta changes
+ * the cells it lists. Frames must be applied in the order they were sent,
+ * starting with a keyframe.
+ *
+ * This is the reference for the frame format; it does not display anything.
+ */
+public class BoardDeltaDecoder {
+
+    /**
+     * The value of a cell which hasn't been revealed.
+     */
+    public static final int HIDDEN = -1;
+
+    private int rows;
+    private int cols;
+    private int mines;
+    private int move;
+    private byte[] values; // HIDDEN, a neighbour count or MINE_VALUE
+    private byte[] protection; // 0 for none, 1 for flag, 2 for question mark
+
+    private byte[] frame; // the frame being applied
+    private int position;
+
+    /**
+     * Reads the next frame from a stream.
+     *
+     * @param in the stream to read from.
+     * @return the frame, or null at the end of the stream.
+     * @throws IOException if the stream ends in the middle of a frame.
+     */
+    public static byte[] readFrame(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        int type = data.read();
+        if (type < 0) {
+            return null;
+        }
+        int length = data.readInt();
+        if (length < 0) {
+            throw new IOException("Bad frame length " + length);
+        }
+        byte[] frame = new byte[length + 5];
+        frame[0] = (byte) type;
+        frame[1] = (byte) (length >>> 24);
+        frame[2] = (byte) (length >>> 16);
+        frame[3] = (byte) (length >>> 8);
+        frame[4] = (byte) length;
+        try {
+            data.readFully(frame, 5, length);
+        } catch (EOFException e) {
+            throw new IOException("Stream ended inside a frame", e);
+        }
+        return frame;
+    }
+
+    /**
+     * Applies a frame to the board.
+     *
+     * @param frame a whole frame, including the type and length.
+     * @throws IllegalArgumentException if the frame is malformed or refers to
+     * cells outside the board.
+     * @throws IllegalStateException if a delta arrives before any keyframe.
+     */
+    public void apply(byte[] frame) {
+        if (frame.length < 5) {
+            throw new IllegalArgumentException("Frame too short");
+        }
+        int length = ((frame[1] & 0xff) << 24) | ((frame[2] & 0xff) << 16)
+                | ((frame[3] & 0xff) << 8) | (frame[4] & 0xff);
+        if (length != frame.length - 5) {
+            throw new IllegalArgumentException("Frame length " + length + " but " + (frame.length - 5)
+                    + " bytes of payload");
+        }
+        this.frame = frame;
+        position = 5;
+        try {
+            if (frame[0] == BoardDeltaEncoder.KEYFRAME) {
+                int newRows = readVarint();
+                int newCols = readVarint();
+                long cells = (long) newRows * newCols;
+                if (cells > Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("Board of " + newRows + "x" + newCols
+                            + " is too large");
+                }
+                rows = newRows;
+                cols = newCols;
+                mines = readVarint();
+                values = new byte[(int) cells];
+                Arrays.fill(values, (byte) HIDDEN);
+                protection = new byte[(int) cells];
+            } else if (frame[0] == BoardDeltaEncoder.DELTA) {
+                if (values == null) {
+                    throw new IllegalStateException("Delta before the first keyframe");
+                }
+            } else {
+                throw new IllegalArgumentException("Unknown frame type " + frame[0]);
+            }
+            move = readVarint();
+            readRevealed();
+            readProtected();
+            if (position != frame.length) {
+                throw new IllegalArgumentException((frame.length - position) + " bytes left over in frame");
+            }
+        } finally {
+            this.frame = null;
+        }
+    }
+
+    public boolean hasBoard() {
+        return values != null;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return cols;
+    }
+
+    public int getNumberOfCells() {
+        return values == null ? 0 : values.length;
+    }
+
+    public int getNumberOfMines() {
+        return mines;
+    }
+
+    /**
+     * @return the number of the last move applied.
+     */
+    public int getMove() {
+        return move;
+    }
+
+    public boolean isRevealed(int index) {
+        return values[index] != HIDDEN;
+    }
+
+    /**
+     * The value of a cell.
+     *
+     * @param index the cell's row-major index.
+     * @return HIDDEN, the number of neighbouring mines, or
+     * BoardDeltaEncoder.MINE_VALUE for a mine.
+     */
+    public int getValue(int index) {
+        return values[index];
+    }
+
+    /**
+     * @param index the cell's row-major index.
+     * @return 0 for none, 1 for a flag and 2 for a question mark.
+     */
+    public int getProtection(int index) {
+        return protection[index];
+    }
+
+    /**
+     * A copy of the board which later frames won't change.
+     */
+    BoardDeltaDecoder copy() {
+        BoardDeltaDecoder copy = new BoardDeltaDecoder();
+        copy.rows = rows;
+        copy.cols = cols;
+        copy.mines = mines;
+        copy.move = move;
+        copy.values = values == null ? null : values.clone();
+        copy.protection = protection == null ? null : protection.clone();
+        return copy;
+    }
+
+    private void readRevealed() {
+        int runs = readVarint();
+        int[] indices = new int[16];
+        int count = 0;
+        long previousEnd = 0;
+        for (int run = 0; run < runs; run++) {
+            long start = previousEnd + readVarint();
+            long end = start + readVarint();
+            if (end > values.length) {
+                throw new IllegalArgumentException("Run " + start + "-" + end + " is outside the board");
+            }
+            for (long index = start; index < end; index++) {
+                if (count == indices.length) {
+                    indices = Arrays.copyOf(indices, count * 2);
+                }
+                indices[count++] = (int) index;
+            }
+            previousEnd = end;
+        }
+
+        for (int i = 0; i < count; i += 2) {
+            int packed = readByte();
+            values[indices[i]] = (byte) checkValue(packed & 0xf);
+            if (i + 1 < count) {
+                values[indices[i + 1]] = (byte) checkValue(packed >>> 4);
+            }
+        }
+    }
+
+    private void readProtected() {
+        int count = readVarint();
+        long index = 0;
+        for (int i = 0; i < count; i++) {
+            index += readVarint();
+            if (index >= values.length) {
+                throw new IllegalArgumentException("Cell " + index + " is outside the board");
+            }
+            int state = readByte();
+            if (state > 2) {
+                throw new IllegalArgumentException("Bad protected state " + state);
+            }
+            protection[(int) index] = (byte) state;
+        }
+    }
+
+    private static int checkValue(int value) {
+        if (value > BoardDeltaEncoder.MINE_VALUE) {
+            throw new IllegalArgumentException("Bad cell value " + value);
+        }
+        return value;
+    }
+
+    private int readByte() {
+        if (position == frame.length) {
+            throw new IllegalArgumentException("Frame ended early");
+        }
+        return frame[position++] & 0xff;
+    }
+
+    private int readVarint() {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = readByte();
+            if (shift == 28 && (b & 0x78) != 0) {
+                throw new IllegalArgumentException("Varint out of range");
+            }
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint too long");
+    }
+}
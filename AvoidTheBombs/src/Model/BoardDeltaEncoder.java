@@ -0,0 +1,269 @@
+/*
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package Model;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Encodes the state of a MineField, or the effect of a single move on it, into
+ * the compact frames sent to spectators.
+ *
+ * Every frame starts with a type byte (KEYFRAME or DELTA) followed by the
+ * payload length as a 4 byte big-endian int. All numbers in the payload are
+ * unsigned LEB128 varints. Cells are addressed by their row-major index
+ * (row * columns + col).
+ *
+ * A keyframe holds rows, columns, mines and move number followed by a revealed
+ * section and a protected section describing the whole board. A delta holds
+ * the move number followed by the same two sections, but only for the cells
+ * the move changed, so its size is proportional to the number of changed
+ * cells.
+ *
+ * The revealed section is the number of runs, then for each run the gap from
+ * the end of the previous run and the run length, then one nibble per
+ * revealed cell (low nibble first) holding its neighbour count, or 9 for a
+ * mine. The protected section is the number of entries, then for each entry
+ * the gap from the previous index and the new state: 0 for none, 1 for flag
+ * and 2 for question mark.
+ *
+ * BoardDeltaDecoder reads the frames back.
+ */
+public class BoardDeltaEncoder {
+
+    public static final int KEYFRAME = 0;
+    public static final int DELTA = 1;
+
+    public static final int MINE_VALUE = 9;
+
+    private BoardDeltaEncoder() {
+    }
+
+    /**
+     * Encodes the full state of the board.
+     *
+     * @param mineField the board to encode.
+     * @param move the number of moves made so far.
+     * @return the encoded frame.
+     */
+    public static byte[] encodeKeyframe(MineField mineField, int move) {
+        Cell[][] cells = mineField.getMineFieldArray();
+        int cols = mineField.getColumns();
+        int[] revealed = new int[16];
+        int revealedCount = 0;
+        int[] protectedCells = new int[16];
+        int protectedCount = 0;
+
+        for (int row = 0; row < mineField.getRows(); row++) {
+            for (int col = 0; col < cols; col++) {
+                Cell cell = cells[row][col];
+                if (cell.alreadyClicked()) {
+                    if (revealedCount == revealed.length) {
+                        revealed = Arrays.copyOf(revealed, revealed.length * 2);
+                    }
+                    revealed[revealedCount++] = row * cols + col;
+                } else if (cell.isFlagged() || cell.isQuestioned()) {
+                    if (protectedCount == protectedCells.length) {
+                        protectedCells = Arrays.copyOf(protectedCells, protectedCells.length * 2);
+                    }
+                    protectedCells[protectedCount++] = row * cols + col;
+                }
+            }
+        }
+
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        writeVarint(payload, mineField.getRows());
+        writeVarint(payload, cols);
+        writeVarint(payload, mineField.getNumberOfMines());
+        writeVarint(payload, move);
+        writeRevealed(payload, revealed, revealedCount, index -> valueOf(cells, cols, index));
+        writeProtected(payload, protectedCells, protectedCount, index -> protectionOf(cells, cols, index));
+        return frame(KEYFRAME, payload);
+    }
+
+    /**
+     * Encodes the full state of a board as it was decoded from earlier
+     * frames.
+     *
+     * @param board the decoded board, which must have had a keyframe.
+     * @return the encoded frame.
+     */
+    public static byte[] encodeKeyframe(BoardDeltaDecoder board) {
+        int cells = board.getNumberOfCells();
+        int[] revealed = new int[16];
+        int revealedCount = 0;
+        int[] protectedCells = new int[16];
+        int protectedCount = 0;
+
+        for (int index = 0; index < cells; index++) {
+            if (board.isRevealed(index)) {
+                if (revealedCount == revealed.length) {
+                    revealed = Arrays.copyOf(revealed, revealed.length * 2);
+                }
+                revealed[revealedCount++] = index;
+            }
+            if (board.getProtection(index) != 0) { // flags stay on mines shown after a loss
+                if (protectedCount == protectedCells.length) {
+                    protectedCells = Arrays.copyOf(protectedCells, protectedCells.length * 2);
+                }
+                protectedCells[protectedCount++] = index;
+            }
+        }
+
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        writeVarint(payload, board.getRows());
+        writeVarint(payload, board.getColumns());
+        writeVarint(payload, board.getNumberOfMines());
+        writeVarint(payload, board.getMove());
+        writeRevealed(payload, revealed, revealedCount, board::getValue);
+        writeProtected(payload, protectedCells, protectedCount, board::getProtection);
+        return frame(KEYFRAME, payload);
+    }
+
+    /**
+     * Encodes the cells changed by a single move. Cells which have been
+     * clicked are sent as revealed, all other cells are sent with their
+     * current flag or question mark state.
+     *
+     * @param mineField the board the cells belong to.
+     * @param changed the cells changed by the move.
+     * @param move the number of moves made so far, including this one.
+     * @return the encoded frame.
+     */
+    public static byte[] encodeDelta(MineField mineField, List<Cell> changed, int move) {
+        Cell[][] cells = mineField.getMineFieldArray();
+        int cols = mineField.getColumns();
+        int[] revealed = new int[changed.size()];
+        int revealedCount = 0;
+        int[] protectedCells = new int[changed.size()];
+        int protectedCount = 0;
+
+        for (Cell cell : changed) {
+            int index = cell.getRow() * cols + cell.getCol();
+            if (cell.alreadyClicked()) {
+                revealed[revealedCount++] = index;
+            } else {
+                protectedCells[protectedCount++] = index;
+            }
+        }
+        Arrays.sort(revealed, 0, revealedCount);
+        Arrays.sort(protectedCells, 0, protectedCount);
+
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        writeVarint(payload, move);
+        writeRevealed(payload, revealed, revealedCount, index -> valueOf(cells, cols, index));
+        writeProtected(payload, protectedCells, protectedCount, index -> protectionOf(cells, cols, index));
+        return frame(DELTA, payload);
+    }
+
+    /**
+     * Encodes a delta revealing every mine on the board, sent when the game
+     * is lost. Only the mine index is read, so the cost is proportional to
+     * the number of mines.
+     *
+     * @param mineField the board whose mines to reveal.
+     * @param move the number of moves made so far, including this one.
+     * @return the encoded frame.
+     */
+    public static byte[] encodeMines(MineField mineField, int move) {
+        int[] mines = mineField.getMinePositions().clone();
+        Arrays.sort(mines);
+
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        writeVarint(payload, move);
+        writeRevealed(payload, mines, mines.length, index -> MINE_VALUE);
+        writeProtected(payload, mines, 0, index -> 0);
+        return frame(DELTA, payload);
+    }
+
+    /**
+     * Writes sorted cell indices as run-length encoded ranges followed by the
+     * packed value of every cell.
+     */
+    private static void writeRevealed(ByteArrayOutputStream out, int[] indices, int count,
+            IntUnaryOperator value) {
+        int runs = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || indices[i] != indices[i - 1] + 1) {
+                runs++;
+            }
+        }
+
+        writeVarint(out, runs);
+        int previousEnd = 0;
+        int i = 0;
+        while (i < count) {
+            int start = indices[i];
+            int end = start + 1;
+            i++;
+            while (i < count && indices[i] == end) {
+                end++;
+                i++;
+            }
+            writeVarint(out, start - previousEnd);
+            writeVarint(out, end - start);
+            previousEnd = end;
+        }
+
+        for (i = 0; i < count; i += 2) {
+            int low = value.applyAsInt(indices[i]);
+            int high = i + 1 < count ? value.applyAsInt(indices[i + 1]) : 0;
+            out.write(low | (high << 4));
+        }
+    }
+
+    private static void writeProtected(ByteArrayOutputStream out, int[] indices, int count,
+            IntUnaryOperator protection) {
+        writeVarint(out, count);
+        int previous = 0;
+        for (int i = 0; i < count; i++) {
+            writeVarint(out, indices[i] - previous);
+            out.write(protection.applyAsInt(indices[i]));
+            previous = indices[i];
+        }
+    }
+
+    private static int valueOf(Cell[][] cells, int cols, int index) {
+        Cell cell = cells[index / cols][index % cols];
+        return cell.getState() == 1 ? MINE_VALUE : cell.getNeighbourCount();
+    }
+
+    private static int protectionOf(Cell[][] cells, int cols, int index) {
+        Cell cell = cells[index / cols][index % cols];
+        return cell.isFlagged() ? 1 : cell.isQuestioned() ? 2 : 0;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static byte[] frame(int type, ByteArrayOutputStream payload) {
+        int length = payload.size();
+        ByteArrayOutputStream frame = new ByteArrayOutputStream(length + 5);
+        frame.write(type);
+        frame.write(length >>> 24);
+        frame.write(length >>> 16);
+        frame.write(length >>> 8);
+        frame.write(length);
+        frame.write(payload.toByteArray(), 0, length);
+        return frame.toByteArray();
+    }
+}
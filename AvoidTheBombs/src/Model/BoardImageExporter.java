@@ -0,0 +1,492 @@
+/*
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package Model;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes the state of a MineField to a PNG image. The state of every cell is
+ * copied when the exporter is created, so the export itself can run on
+ * another thread while the game goes on. The copy is half a byte per cell.
+ * The image is not built in memory; its raw scanlines are rendered a
+ * fixed-size segment at a time, straight from the copied cell state, and
+ * streamed into the PNG encoder, so apart from the copy the memory used is
+ * the same however many rows and columns the board has.
+ */
+public class BoardImageExporter {
+
+    private static final int HIDDEN = 0;
+    private static final int FLAG = 9;
+    private static final int QUESTION = 10;
+    private static final int MINE = 11;
+    private static final int EMPTY = 12;
+    private static final int SPRITE_COUNT = 13; // at most 16, to fit in half a byte
+
+    private static final int IDAT_CHUNK_SIZE = 64 * 1024;
+    private static final int SEGMENT_SIZE = 256 * 1024; // raw image bytes rendered at a time
+
+    private final int rows;
+    private final int cols;
+    private final int cellSize;
+    private final byte[] cellSprites; // sprite of every cell, row by row, two to a byte
+    private boolean parallel;
+    private byte[][] sprites;
+
+    /**
+     * Copies the state of the board, drawing each cell 30 pixels wide.
+     *
+     * @param mineField the board to export.
+     * @param showMines true if every mine should be drawn, and not only the
+     * one which was hit. Useful when exporting a finished game.
+     */
+    public BoardImageExporter(MineField mineField, boolean showMines) {
+        this(mineField, showMines, 30);
+    }
+
+    /**
+     * Copies the state of the board.
+     *
+     * @param mineField the board to export.
+     * @param showMines true if every mine should be drawn.
+     * @param cellSize the width and height of a cell in pixels.
+     * @throws IllegalArgumentException if the board has no cells or the image
+     * would be too large for a PNG.
+     */
+    public BoardImageExporter(MineField mineField, boolean showMines, int cellSize) {
+        rows = mineField.getRows();
+        cols = mineField.getColumns();
+        this.cellSize = cellSize;
+        if (rows <= 0 || cols <= 0 || cellSize <= 0) {
+            throw new IllegalArgumentException("Can't export an empty board");
+        }
+        if ((long) rows * cellSize > Integer.MAX_VALUE
+                || (long) cols * cellSize * 3 + 1 > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The board is too large to export as a PNG image");
+        }
+
+        cellSprites = new byte[(int) (((long) rows * cols + 1) / 2)];
+        Cell[][] cells = mineField.getMineFieldArray();
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                int index = row * cols + col;
+                cellSprites[index >>> 1] |= spriteFor(cells[row][col], showMines) << ((index & 1) * 4);
+            }
+        }
+        parallel = false;
+    }
+
+    /**
+     * Sets whether segments of the image should be rendered and compressed on
+     * all available cores. A bounded number of segments is kept in flight at
+     * any time.
+     *
+     * @param parallel true to use multiple cores.
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * Writes the board to the given file as a PNG image.
+     *
+     * @param file the file to write to.
+     * @throws IOException if the file could not be written.
+     */
+    public void export(File file) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            export(out);
+        }
+    }
+
+    /**
+     * Writes the board to the given stream as a PNG image. The stream is not
+     * closed.
+     *
+     * @param out the stream to write to.
+     * @throws IOException if writing to the stream fails.
+     */
+    public void export(OutputStream out) throws IOException {
+        if (sprites == null) {
+            sprites = createSprites();
+        }
+
+        DataOutputStream data = new DataOutputStream(out);
+        data.write(new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'});
+
+        byte[] header = new byte[13];
+        putInt(header, 0, cols * cellSize);
+        putInt(header, 4, rows * cellSize);
+        header[8] = 8; // bit depth
+        header[9] = 2; // colour type RGB
+        writeChunk(data, "IHDR", header, header.length);
+
+        ChunkOutputStream idat = new ChunkOutputStream(data);
+        if (parallel && imageSize() > SEGMENT_SIZE) {
+            writeParallel(idat);
+        } else {
+            writeSequential(idat);
+        }
+        idat.flush();
+
+        writeChunk(data, "IEND", new byte[0], 0);
+        data.flush();
+    }
+
+    /**
+     * Renders each segment into the same buffer and streams it through a
+     * single zlib stream.
+     */
+    private void writeSequential(OutputStream idat) throws IOException {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            DeflaterOutputStream zlib = new DeflaterOutputStream(idat, deflater, IDAT_CHUNK_SIZE);
+            byte[] segment = new byte[SEGMENT_SIZE];
+            long size = imageSize();
+            for (long offset = 0; offset < size; offset += SEGMENT_SIZE) {
+                int length = (int) Math.min(SEGMENT_SIZE, size - offset);
+                render(offset, segment, length);
+                zlib.write(segment, 0, length);
+            }
+            zlib.finish();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Renders and compresses segments on a thread pool. Every segment is
+     * compressed as its own raw deflate block sequence ending on a byte
+     * boundary, so the pieces can be concatenated in order into one zlib
+     * stream. At most two segments per core are held in memory at once.
+     */
+    private void writeParallel(OutputStream idat) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        long size = imageSize();
+        long segments = (size + SEGMENT_SIZE - 1) / SEGMENT_SIZE;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            ArrayDeque<Future<CompressedSegment>> inFlight = new ArrayDeque<>();
+            long adler = 1;
+            long next = 0;
+
+            idat.write(0x78); // zlib header, default compression
+            idat.write(0x9c);
+            while (next < segments || !inFlight.isEmpty()) {
+                while (next < segments && inFlight.size() < threads * 2) {
+                    final long offset = next++ * SEGMENT_SIZE;
+                    final int length = (int) Math.min(SEGMENT_SIZE, size - offset);
+                    inFlight.add(pool.submit(() -> compress(offset, length, offset + length == size)));
+                }
+                CompressedSegment segment = inFlight.poll().get();
+                idat.write(segment.data, 0, segment.length);
+                adler = combineAdler32(adler, segment.adler, segment.rawLength);
+            }
+            idat.write((int) (adler >>> 24));
+            idat.write((int) (adler >>> 16));
+            idat.write((int) (adler >>> 8));
+            idat.write((int) adler);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Export was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Could not render board", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private CompressedSegment compress(long offset, int length, boolean last) {
+        byte[] segment = new byte[length];
+        render(offset, segment, length);
+
+        Adler32 adler = new Adler32();
+        adler.update(segment, 0, length);
+
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(segment);
+            if (last) {
+                deflater.finish();
+            }
+            byte[] out = new byte[length / 2 + 64];
+            int outLength = 0;
+            while (true) {
+                if (outLength == out.length) {
+                    out = Arrays.copyOf(out, out.length * 2);
+                }
+                int space = out.length - outLength;
+                int n = last ? deflater.deflate(out, outLength, space)
+                        : deflater.deflate(out, outLength, space, Deflater.SYNC_FLUSH);
+                outLength += n;
+                if (last ? deflater.finished() : n < space) {
+                    break;
+                }
+            }
+            return new CompressedSegment(out, outLength, length, adler.getValue());
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Fills the buffer with the given range of the raw image data: the PNG
+     * scanlines one after the other, each starting with filter type 0 followed
+     * by RGB triplets. Pixels are copied from the cell sprites a run at a
+     * time.
+     */
+    private void render(long offset, byte[] buffer, int length) {
+        long lineLength = scanlineLength();
+        int spriteLine = cellSize * 3;
+        int i = 0;
+
+        while (i < length) {
+            long line = (offset + i) / lineLength;
+            int position = (int) ((offset + i) % lineLength);
+            if (position == 0) {
+                buffer[i++] = 0; // filter type
+                continue;
+            }
+            int row = (int) (line / cellSize);
+            int y = (int) (line % cellSize);
+            int col = (position - 1) / spriteLine;
+            int within = (position - 1) % spriteLine;
+
+            // copy to the end of this line, or of the buffer, one cell at a time
+            while (i < length && col < cols) {
+                int index = row * cols + col;
+                byte[] sprite = sprites[(cellSprites[index >>> 1] >>> ((index & 1) * 4)) & 0xf];
+                int n = Math.min(spriteLine - within, length - i);
+                System.arraycopy(sprite, y * spriteLine + within, buffer, i, n);
+                i += n;
+                within = 0;
+                col++;
+            }
+        }
+    }
+
+    private static int spriteFor(Cell cell, boolean showMines) {
+        if (cell.getState() == 1 && (showMines || cell.alreadyClicked())) {
+            return MINE;
+        } else if (cell.alreadyClicked()) {
+            return cell.getNeighbourCount() == 0 ? EMPTY : cell.getNeighbourCount();
+        } else if (cell.isFlagged()) {
+            return FLAG;
+        } else if (cell.isQuestioned()) {
+            return QUESTION;
+        }
+        return HIDDEN;
+    }
+
+    private int scanlineLength() {
+        return 1 + cols * cellSize * 3;
+    }
+
+    private long imageSize() {
+        return (long) scanlineLength() * rows * cellSize;
+    }
+
+    /**
+     * Draws one image per kind of cell and keeps its raw RGB bytes, so the
+     * board itself can be rendered by copying bytes.
+     */
+    private byte[][] createSprites() {
+        byte[][] result = new byte[SPRITE_COUNT][];
+        BufferedImage image = new BufferedImage(cellSize, cellSize, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        g.setFont(new Font(Font.SANS_SERIF, Font.BOLD, Math.max(8, cellSize * 3 / 5)));
+
+        for (int sprite = 0; sprite < SPRITE_COUNT; sprite++) {
+            boolean revealed = sprite >= 1 && sprite <= 8 || sprite == EMPTY;
+            if (sprite == MINE) {
+                g.setColor(new Color(0xee5353));
+            } else if (revealed) {
+                g.setColor(Color.WHITE);
+            } else {
+                g.setColor(new Color(0xdddddd));
+            }
+            g.fillRect(0, 0, cellSize, cellSize);
+            g.setColor(revealed ? Color.BLACK : new Color(0x999999));
+            g.setStroke(new BasicStroke(1));
+            g.drawRect(0, 0, cellSize - 1, cellSize - 1);
+
+            g.setColor(Color.BLACK);
+            if (sprite >= 1 && sprite <= 8) {
+                drawCentered(g, String.valueOf(sprite));
+            } else if (sprite == QUESTION) {
+                drawCentered(g, "?");
+            } else if (sprite == FLAG) {
+                int pole = cellSize / 3;
+                g.drawLine(pole, cellSize / 5, pole, cellSize * 4 / 5);
+                g.setColor(new Color(0xcc0000));
+                g.fillPolygon(new int[]{pole, cellSize * 3 / 4, pole},
+                        new int[]{cellSize / 5, cellSize * 7 / 20, cellSize / 2}, 3);
+            } else if (sprite == MINE) {
+                int size = cellSize / 2;
+                g.fillOval((cellSize - size) / 2, (cellSize - size) / 2, size, size);
+            }
+            result[sprite] = toRgb(image);
+        }
+        g.dispose();
+        return result;
+    }
+
+    private void drawCentered(Graphics2D g, String text) {
+        FontMetrics metrics = g.getFontMetrics();
+        int x = (cellSize - metrics.stringWidth(text)) / 2;
+        int y = (cellSize - metrics.getHeight()) / 2 + metrics.getAscent();
+        g.drawString(text, x, y);
+    }
+
+    private byte[] toRgb(BufferedImage image) {
+        byte[] rgb = new byte[cellSize * cellSize * 3];
+        int i = 0;
+        for (int y = 0; y < cellSize; y++) {
+            for (int x = 0; x < cellSize; x++) {
+                int pixel = image.getRGB(x, y);
+                rgb[i++] = (byte) (pixel >> 16);
+                rgb[i++] = (byte) (pixel >> 8);
+                rgb[i++] = (byte) pixel;
+            }
+        }
+        return rgb;
+    }
+
+    /**
+     * Combines the Adler-32 checksums of two consecutive pieces of data, as
+     * done by zlib's adler32_combine.
+     */
+    private static long combineAdler32(long adler1, long adler2, long length2) {
+        final long base = 65521;
+        long rem = length2 % base;
+        long sum1 = adler1 & 0xffff;
+        long sum2 = (rem * sum1) % base;
+        sum1 += (adler2 & 0xffff) + base - 1;
+        sum2 += ((adler1 >> 16) & 0xffff) + ((adler2 >> 16) & 0xffff) + base - rem;
+        if (sum1 >= base) {
+            sum1 -= base;
+        }
+        if (sum1 >= base) {
+            sum1 -= base;
+        }
+        if (sum2 >= (base << 1)) {
+            sum2 -= (base << 1);
+        }
+        if (sum2 >= base) {
+            sum2 -= base;
+        }
+        return sum1 | (sum2 << 16);
+    }
+
+    private static void writeChunk(DataOutputStream out, String type, byte[] data, int length) throws IOException {
+        byte[] typeBytes = type.getBytes("US-ASCII");
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+        out.writeInt(length);
+        out.write(typeBytes);
+        out.write(data, 0, length);
+        out.writeInt((int) crc.getValue());
+    }
+
+    private static void putInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+
+    /**
+     * Splits everything written to it into IDAT chunks of a fixed size.
+     */
+    private static class ChunkOutputStream extends OutputStream {
+
+        private final DataOutputStream out;
+        private final byte[] buffer = new byte[IDAT_CHUNK_SIZE];
+        private int count;
+
+        ChunkOutputStream(DataOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                flush();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buffer.length) {
+                    flush();
+                }
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (count > 0) {
+                writeChunk(out, "IDAT", buffer, count);
+                count = 0;
+            }
+        }
+    }
+
+    private static class CompressedSegment {
+
+        final byte[] data;
+        final int length;
+        final int rawLength;
+        final long adler;
+
+        CompressedSegment(byte[] data, int length, int rawLength, long adler) {
+            this.data = data;
+            this.length = length;
+            this.rawLength = rawLength;
+            this.adler = adler;
+        }
+    }
+}
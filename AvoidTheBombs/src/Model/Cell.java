@@ -22,6 +22,7 @@ public class Cell {
 
     private int state; // 1 means mine, 0 means no mine
     private int neighbourCount;
+    private int flaggedNeighbourCount;
     private boolean hasBeenClicked;
     private boolean flagged;
     private boolean questioned;
@@ -89,6 +90,31 @@ public class Cell {
         neighbourCount++;
     }
 
+    /**
+     * Decreases the neighbour count by 1.
+     */
+    public void decreaseNeighbourCount() {
+        neighbourCount--;
+    }
+
+    /**
+     * Changes the number of flagged neighbouring cells by the given amount.
+     *
+     * @param change 1 when a neighbour was flagged, -1 when it was unflagged.
+     */
+    public void changeFlaggedNeighbourCount(int change) {
+        flaggedNeighbourCount += change;
+    }
+
+    /**
+     * Returns the number of neighbouring cells which are flagged.
+     *
+     * @return
+     */
+    public int getFlaggedNeighbourCount() {
+        return flaggedNeighbourCount;
+    }
+
     /**
      * Returns the number of mines this cell has in neighbouring cells.
      *
@@ -0,0 +1,421 @@
+/*
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package Model;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Stores every finished game in a directory of memory-mapped column files,
+ * one file per field. Every column has a fixed width, so any game can be
+ * read directly: the outcome is a single bit in a bitmap, the seed is 64 bit
+ * and everything else is 32 bit, wide enough for the largest board. The
+ * columns are not compressed. Games are appended by writing each column and
+ * then bumping the game count in the meta file, so a game which was only
+ * partly written is never read.
+ *
+ * Only one game may have the archive open at a time. The meta file is
+ * locked while it is open, which keeps out other processes. Archives open in
+ * this process are also tracked by directory, because opening and closing
+ * the meta file a second time would release the lock.
+ *
+ * The queries scan the columns they need straight from the mapped files, so
+ * millions of games can be aggregated without creating an object per game.
+ */
+public class GameArchive implements Closeable {
+
+    private static final int MAGIC = 0x41544247; // "ATBG"
+    private static final int VERSION = 3;
+    private static final int INITIAL_CAPACITY = 1 << 16; // games, a multiple of 8
+
+    private static final String[] COLUMN_NAMES = {"rows", "cols", "mines", "seed",
+        "duration", "moves", "3bv"};
+    private static final int[] COLUMN_WIDTHS = {4, 4, 4, 8, 4, 4, 4};
+    private static final int ROWS = 0;
+    private static final int COLS = 1;
+    private static final int MINES = 2;
+    private static final int SEED = 3;
+    private static final int DURATION = 4;
+    private static final int MOVES = 5;
+    private static final int BBBV = 6;
+
+    private static final Set<File> OPEN_DIRECTORIES = new HashSet<>();
+
+    private final File directory;
+    private final RandomAccessFile[] files;
+    private final MappedByteBuffer[] columns;
+    private RandomAccessFile wonFile;
+    private MappedByteBuffer won; // one bit per game
+    private RandomAccessFile metaFile;
+    private MappedByteBuffer meta; // magic, version, number of games
+    private int capacity;
+    private boolean open;
+
+    /**
+     * Opens the archive in the given directory, creating it if needed.
+     *
+     * @param directory the directory holding the column files.
+     * @throws IOException if the archive could not be opened, is not an
+     * archive or is open in another game.
+     */
+    public GameArchive(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        this.directory = directory.getCanonicalFile();
+        synchronized (OPEN_DIRECTORIES) {
+            if (!OPEN_DIRECTORIES.add(this.directory)) {
+                throw new IOException(directory + " is in use by another game");
+            }
+        }
+        open = true;
+
+        files = new RandomAccessFile[COLUMN_NAMES.length];
+        columns = new MappedByteBuffer[COLUMN_NAMES.length];
+        try {
+            metaFile = new RandomAccessFile(new File(directory, "games.meta"), "rw");
+            FileLock lock = metaFile.getChannel().tryLock(); // released when the meta file is closed
+            if (lock == null) {
+                throw new IOException(directory + " is in use by another game");
+            }
+            boolean created = metaFile.length() == 0;
+            meta = metaFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, 16);
+            if (created) {
+                meta.putInt(0, MAGIC);
+                meta.putInt(4, VERSION);
+                meta.putLong(8, 0);
+            } else if (meta.getInt(0) != MAGIC || meta.getInt(4) != VERSION) {
+                throw new IOException(directory + " does not hold a game archive");
+            }
+
+            for (int i = 0; i < COLUMN_NAMES.length; i++) {
+                files[i] = new RandomAccessFile(new File(directory, COLUMN_NAMES[i] + ".col"), "rw");
+            }
+            wonFile = new RandomAccessFile(new File(directory, "won.col"), "rw");
+
+            capacity = INITIAL_CAPACITY;
+            while (capacity < getNumberOfGames()) {
+                capacity *= 2;
+            }
+            map();
+        } catch (IOException | RuntimeException e) { // don't leave the directory marked as open
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * The number of games in the archive.
+     *
+     * @return the number of games.
+     */
+    public final int getNumberOfGames() {
+        return (int) meta.getLong(8);
+    }
+
+    /**
+     * Appends a finished game.
+     *
+     * @param mineField the board the game was played on.
+     * @param playerWon true if the player cleared the board.
+     * @param durationMillis how long the game took in milliseconds.
+     * @param moves the number of moves the player made.
+     * @throws IOException if the archive could not be grown.
+     */
+    public synchronized void record(MineField mineField, boolean playerWon, long durationMillis,
+            int moves) throws IOException {
+        int game = getNumberOfGames();
+        if (game == capacity) {
+            capacity *= 2;
+            map();
+        }
+
+        columns[ROWS].putInt(game * 4, mineField.getRows());
+        columns[COLS].putInt(game * 4, mineField.getColumns());
+        columns[MINES].putInt(game * 4, mineField.getMinePositions().length);
+        columns[SEED].putLong(game * 8, mineField.getSeed());
+        columns[DURATION].putInt(game * 4, (int) Math.min(durationMillis, Integer.MAX_VALUE));
+        columns[MOVES].putInt(game * 4, moves);
+        columns[BBBV].putInt(game * 4, mineField.get3BV());
+        int bits = won.get(game >>> 3);
+        if (playerWon) {
+            bits |= 1 << (game & 7);
+        } else {
+            bits &= ~(1 << (game & 7));
+        }
+        won.put(game >>> 3, (byte) bits);
+
+        meta.putLong(8, game + 1);
+    }
+
+    /**
+     * Counts games and wins for every combination of board size and number
+     * of mines which has been played.
+     *
+     * @return one group per board size and number of mines, in order of
+     * first play.
+     */
+    public synchronized List<Group> getWinRateBySize() {
+        int games = getNumberOfGames();
+        MappedByteBuffer rows = columns[ROWS];
+        MappedByteBuffer cols = columns[COLS];
+        MappedByteBuffer mines = columns[MINES];
+
+        // open addressing table from board size and mines to group number
+        long[] sizeKeys = new long[64];
+        int[] mineKeys = new int[64];
+        int[] slots = new int[64];
+        Arrays.fill(slots, -1);
+        long[] groupSizes = new long[16];
+        int[] groupMines = new int[16];
+        int[] groupGames = new int[16];
+        int[] groupWins = new int[16];
+        int groups = 0;
+
+        for (int game = 0; game < games; game++) {
+            long size = ((long) rows.getInt(game * 4) << 32) | cols.getInt(game * 4);
+            int m = mines.getInt(game * 4);
+
+            int slot = slot(size, m, slots.length);
+            while (slots[slot] != -1 && (sizeKeys[slot] != size || mineKeys[slot] != m)) {
+                slot = (slot + 1) & (slots.length - 1);
+            }
+            int group = slots[slot];
+            if (group == -1) {
+                group = groups++;
+                sizeKeys[slot] = size;
+                mineKeys[slot] = m;
+                slots[slot] = group;
+                if (group == groupSizes.length) {
+                    groupSizes = Arrays.copyOf(groupSizes, group * 2);
+                    groupMines = Arrays.copyOf(groupMines, group * 2);
+                    groupGames = Arrays.copyOf(groupGames, group * 2);
+                    groupWins = Arrays.copyOf(groupWins, group * 2);
+                }
+                groupSizes[group] = size;
+                groupMines[group] = m;
+                if (groups * 2 > slots.length) { // keep the table at most half full
+                    sizeKeys = new long[slots.length * 2];
+                    mineKeys = new int[slots.length * 2];
+                    slots = new int[slots.length * 2];
+                    Arrays.fill(slots, -1);
+                    for (int g = 0; g < groups; g++) {
+                        int s = slot(groupSizes[g], groupMines[g], slots.length);
+                        while (slots[s] != -1) {
+                            s = (s + 1) & (slots.length - 1);
+                        }
+                        sizeKeys[s] = groupSizes[g];
+                        mineKeys[s] = groupMines[g];
+                        slots[s] = g;
+                    }
+                }
+            }
+            groupGames[group]++;
+            if ((won.get(game >>> 3) & (1 << (game & 7))) != 0) {
+                groupWins[group]++;
+            }
+        }
+
+        List<Group> result = new ArrayList<>();
+        for (int group = 0; group < groups; group++) {
+            result.add(new Group((int) (groupSizes[group] >>> 32), (int) groupSizes[group],
+                    groupMines[group], groupGames[group], groupWins[group]));
+        }
+        return result;
+    }
+
+    /**
+     * Finds exact percentiles of game duration without sorting. The first
+     * pass counts games by the upper 16 bits of their duration to find which
+     * bucket each percentile falls in, the second counts the lower 16 bits of
+     * the games in those buckets.
+     *
+     * @param wonOnly true to only look at games which were won.
+     * @param percentiles the percentiles to find, between 0 and 100.
+     * @return the duration in milliseconds at each percentile, or -1 for every
+     * percentile if there are no games.
+     */
+    public synchronized int[] getDurationPercentiles(boolean wonOnly, double... percentiles) {
+        int games = getNumberOfGames();
+        MappedByteBuffer duration = columns[DURATION];
+        int[] result = new int[percentiles.length];
+
+        int[] high = new int[1 << 15]; // durations are never negative
+        int count = 0;
+        for (int game = 0; game < games; game++) {
+            if (!wonOnly || (won.get(game >>> 3) & (1 << (game & 7))) != 0) {
+                high[duration.getInt(game * 4) >>> 16]++;
+                count++;
+            }
+        }
+        if (count == 0) {
+            Arrays.fill(result, -1);
+            return result;
+        }
+
+        int[] bucket = new int[percentiles.length];
+        int[] rankInBucket = new int[percentiles.length];
+        for (int p = 0; p < percentiles.length; p++) {
+            int rank = (int) Math.ceil(percentiles[p] / 100 * count) - 1;
+            rank = Math.max(0, Math.min(count - 1, rank));
+            int b = 0;
+            while (rank >= high[b]) {
+                rank -= high[b];
+                b++;
+            }
+            bucket[p] = b;
+            rankInBucket[p] = rank;
+        }
+
+        int[] distinct = Arrays.stream(bucket).distinct().sorted().toArray();
+        int[][] low = new int[distinct.length][];
+        for (int i = 0; i < distinct.length; i++) {
+            low[i] = new int[1 << 16];
+        }
+        for (int game = 0; game < games; game++) {
+            if (!wonOnly || (won.get(game >>> 3) & (1 << (game & 7))) != 0) {
+                int value = duration.getInt(game * 4);
+                for (int i = 0; i < distinct.length; i++) {
+                    if (value >>> 16 == distinct[i]) {
+                        low[i][value & 0xffff]++;
+                    }
+                }
+            }
+        }
+
+        for (int p = 0; p < percentiles.length; p++) {
+            int[] counts = low[Arrays.binarySearch(distinct, bucket[p])];
+            int rank = rankInBucket[p];
+            int v = 0;
+            while (rank >= counts[v]) {
+                rank -= counts[v];
+                v++;
+            }
+            result[p] = (bucket[p] << 16) | v;
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (files != null) {
+            for (RandomAccessFile file : files) {
+                if (file != null) {
+                    file.close();
+                }
+            }
+        }
+        if (wonFile != null) {
+            wonFile.close();
+        }
+        if (metaFile != null) {
+            metaFile.close();
+        }
+        if (open) {
+            open = false;
+            synchronized (OPEN_DIRECTORIES) {
+                OPEN_DIRECTORIES.remove(directory);
+            }
+        }
+    }
+
+    /**
+     * The first slot to try for a group in a table of the given size, a
+     * power of two.
+     */
+    private static int slot(long size, int mines, int tableSize) {
+        long hash = (size ^ mines * 0xC2B2AE3D27D4EB4FL) * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 40) & (tableSize - 1);
+    }
+
+    /**
+     * Maps every column at the current capacity, growing the files if
+     * needed.
+     */
+    private void map() throws IOException {
+        for (int i = 0; i < COLUMN_NAMES.length; i++) {
+            columns[i] = files[i].getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                    (long) capacity * COLUMN_WIDTHS[i]);
+        }
+        won = wonFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity / 8);
+    }
+
+    @Override
+    public String toString() {
+        return "GameArchive " + directory + " (" + getNumberOfGames() + " games)";
+    }
+
+    /**
+     * The number of games and wins for one board size and number of mines.
+     */
+    public static class Group {
+
+        private final int rows;
+        private final int cols;
+        private final int mines;
+        private final int games;
+        private final int wins;
+
+        Group(int rows, int cols, int mines, int games, int wins) {
+            this.rows = rows;
+            this.cols = cols;
+            this.mines = mines;
+            this.games = games;
+            this.wins = wins;
+        }
+
+        public int getRows() {
+            return rows;
+        }
+
+        public int getColumns() {
+            return cols;
+        }
+
+        public int getMines() {
+            return mines;
+        }
+
+        /**
+         * @return the percentage of cells which were mines.
+         */
+        public double getDensity() {
+            long cells = (long) rows * cols;
+            return cells == 0 ? 0 : mines * 100.0 / cells;
+        }
+
+        public int getGames() {
+            return games;
+        }
+
+        public int getWins() {
+            return wins;
+        }
+
+        public double getWinRate() {
+            return games == 0 ? 0 : (double) wins / games;
+        }
+    }
+}
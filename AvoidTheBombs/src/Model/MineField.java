@@ -14,6 +14,9 @@
  */
 package Model;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 
 /**
@@ -22,12 +25,18 @@ import java.util.Random;
  */
 public class MineField {
 
+    private static final int[][] ORTHOGONAL = {{-1, 0}, {1, 0}, {0, 1}, {0, -1}};
+
     private int numberOfMines; // number of mines on the board in percent of board size
     private int numberOfRows;
     private int numberOfCols;
     private Cell[][] mineField;
     private int numberCleared;
     private boolean shouldReset;
+    private int[] minePositions; // index of every mine as row * numberOfCols + col
+    private boolean firstReveal;
+    private long seed;
+    private Random random;
 
     public MineField() {
         numberOfMines = 10;
@@ -35,14 +44,30 @@ public class MineField {
         numberOfCols = 20;
         numberCleared = 0;
         shouldReset = false;
+        seed = new Random().nextLong();
         createMineField();
     }
     
     public MineField(int rows, int cols, int mines) {
+        this(rows, cols, mines, new Random().nextLong());
+    }
+
+    /**
+     * Creates a minefield whose mines are placed from the given seed. Two
+     * minefields with the same size, number of mines and seed are identical,
+     * and stay identical as long as the same cells are revealed.
+     *
+     * @param rows the number of rows.
+     * @param cols the number of columns.
+     * @param mines the number of mines.
+     * @param seed the seed used to place the mines.
+     */
+    public MineField(int rows, int cols, int mines, long seed) {
         numberOfRows = rows;
         numberOfCols = cols;
         numberOfMines = mines;
         shouldReset = false;
+        this.seed = seed;
         createMineField();
     }
     
@@ -81,10 +106,13 @@ public class MineField {
 
     /**
      * Creates a new minefield where mines are placed randomly across the field
-     * based on the minePecentage variable.
+     * based on the minePecentage variable. The position of every mine is also
+     * stored in the mine index.
      */
     public void createMineField() {
         mineField = new Cell[numberOfRows][numberOfCols];
+        minePositions = new int[getNumberOfMines()];
+        firstReveal = true;
 
         for (int row = 0; row < numberOfRows; row++) {
             for (int col = 0; col < numberOfCols; col++) {
@@ -92,12 +120,13 @@ public class MineField {
             }
         }
 
-        Random r = new Random(); // randomly place mines
+        random = new Random(seed); // randomly place mines
         for (int i = 0; i < getNumberOfMines(); i++) {
-            int row = r.nextInt(numberOfRows);
-            int col = r.nextInt(numberOfCols);
+            int row = random.nextInt(numberOfRows);
+            int col = random.nextInt(numberOfCols);
             if(mineField[row][col].getState() != 1) { // make sure mine hasen't already been placed here.
                 mineField[row][col].setState(1);
+                minePositions[i] = row * numberOfCols + col;
             } else { // there is already a mine here. Reduce counter so we can try again.
                 i--;
             }
@@ -107,51 +136,290 @@ public class MineField {
     }
 
     /**
-     * Iterate through the minefield and count how many mines border to each
-     * cell.
+     * Go through the mine index and count how many mines border to each cell.
      */
     private void countNeighbouringMines() {
-        for (int row = 0; row < numberOfRows; row++) {
-            for (int col = 0; col < numberOfCols; col++) {
-                if (mineField[row][col].getState() == 1) {
+        for (int position : minePositions) {
+            changeNeighbourCounts(position / numberOfCols, position % numberOfCols, 1);
+        }
+    }
 
-                    if (row - 1 >= 0) {
-                        mineField[row - 1][col].increaseNeighbourCount();
-                        if (col + 1 < numberOfCols) {
-                            mineField[row - 1][col + 1].increaseNeighbourCount();
-                        }
-                        if (col - 1 >= 0) {
-                            mineField[row - 1][col - 1].increaseNeighbourCount();
+    /**
+     * Increases or decreases the neighbour count of every cell bordering to
+     * the given cell.
+     */
+    private void changeNeighbourCounts(int row, int col, int change) {
+        for (int r = Math.max(0, row - 1); r <= Math.min(numberOfRows - 1, row + 1); r++) {
+            for (int c = Math.max(0, col - 1); c <= Math.min(numberOfCols - 1, col + 1); c++) {
+                if (r == row && c == col) {
+                    continue;
+                }
+                if (change > 0) {
+                    mineField[r][c].increaseNeighbourCount();
+                } else {
+                    mineField[r][c].decreaseNeighbourCount();
+                }
+            }
+        }
+    }
 
-                        }
+    /**
+     * The position of every mine as row * columns + column. The array is the
+     * index itself and must not be modified.
+     *
+     * @return an int array with one entry per mine.
+     */
+    public int[] getMinePositions() {
+        return minePositions;
+    }
 
-                    }
+    /**
+     * Counts the mines which the player has flagged. Only the mine index is
+     * looked at, not the whole board.
+     *
+     * @return the number of flags placed on mines.
+     */
+    public int getNumberOfCorrectFlags() {
+        int correct = 0;
+        for (int position : minePositions) {
+            if (mineField[position / numberOfCols][position % numberOfCols].isFlagged()) {
+                correct++;
+            }
+        }
+        return correct;
+    }
+
+    /**
+     * Moves the mine in the given cell to a random cell which isn't a mine,
+     * updating the mine index and the neighbour counts around both cells.
+     * Nothing happens if the cell isn't a mine or every cell is a mine.
+     *
+     * @param cell the cell holding the mine to move.
+     */
+    public void relocateMine(Cell cell) {
+        if (cell.getState() != 1 || minePositions.length >= getNumberOfCells()) {
+            return;
+        }
+
+        int row;
+        int col;
+        do { // the board always has a free cell, so this ends
+            row = random.nextInt(numberOfRows);
+            col = random.nextInt(numberOfCols);
+        } while (mineField[row][col].getState() == 1);
+
+        int oldPosition = cell.getRow() * numberOfCols + cell.getCol();
+        for (int i = 0; i < minePositions.length; i++) {
+            if (minePositions[i] == oldPosition) {
+                minePositions[i] = row * numberOfCols + col;
+                break;
+            }
+        }
+        cell.setState(0);
+        changeNeighbourCounts(cell.getRow(), cell.getCol(), -1);
+        mineField[row][col].setState(1);
+        changeNeighbourCounts(row, col, 1);
+    }
 
-                    if (row + 1 < numberOfRows) {
-                        if (col + 1 < numberOfCols) {
-                            mineField[row + 1][col + 1].increaseNeighbourCount();
+    /**
+     * The seed the mines were placed from.
+     *
+     * @return the seed of this minefield.
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Whether every cell which isn't a mine has been revealed.
+     *
+     * @return true if the game has been won.
+     */
+    public boolean isCleared() {
+        return numberCleared == getNumberOfCells() - minePositions.length;
+    }
+
+    /**
+     * The Bechtel's Board Benchmark Value (3BV) of the board: the least number
+     * of left-clicks needed to clear it. Every connected region of cells
+     * without neighbouring mines takes one click, and since a cascade only
+     * opens such cells, every numbered cell takes one click of its own.
+     *
+     * @return the 3BV of the board.
+     */
+    public int get3BV() {
+        boolean[] visited = new boolean[getNumberOfCells()];
+        ArrayDeque<Cell> stack = new ArrayDeque<>();
+        int clicks = 0;
+
+        for (int row = 0; row < numberOfRows; row++) {
+            for (int col = 0; col < numberOfCols; col++) {
+                Cell cell = mineField[row][col];
+                if (cell.getState() == 1) {
+                    continue;
+                }
+                if (cell.getNeighbourCount() != 0) {
+                    clicks++;
+                    continue;
+                }
+                if (visited[row * numberOfCols + col]) {
+                    continue;
+                }
+
+                clicks++; // a new empty region
+                visited[row * numberOfCols + col] = true;
+                stack.push(cell);
+                while (!stack.isEmpty()) {
+                    Cell current = stack.pop();
+                    for (int[] direction : ORTHOGONAL) {
+                        int r = current.getRow() + direction[0];
+                        int c = current.getCol() + direction[1];
+                        if (r < 0 || r >= numberOfRows || c < 0 || c >= numberOfCols
+                                || visited[r * numberOfCols + c]) {
+                            continue;
                         }
-                        if (col - 1 >= 0) {
-                            mineField[row + 1][col - 1].increaseNeighbourCount();
+                        Cell tmpCell = mineField[r][c];
+                        if (tmpCell.getState() == 0 && tmpCell.getNeighbourCount() == 0) {
+                            visited[r * numberOfCols + c] = true;
+                            stack.push(tmpCell);
                         }
-                        mineField[row + 1][col].increaseNeighbourCount();
                     }
+                }
+            }
+        }
+        return clicks;
+    }
 
-                    if (col + 1 < numberOfCols) {
-                        mineField[row][col + 1].increaseNeighbourCount();
-                    }
+    public Cell[][] getMineFieldArray() {
+        return mineField;
+    }
 
-                    if (col - 1 >= 0) {
-                        mineField[row][col - 1].increaseNeighbourCount();
-                    }
+    /**
+     * Left-clicks a cell. A cell without neighbouring mines also reveals all
+     * connected cells which have no neighbouring mines. Flagged and questioned
+     * cells are left alone. The first cell revealed in a game is never a mine;
+     * a mine there is moved elsewhere first.
+     *
+     * @param cell the cell which was clicked.
+     * @return the cells which were revealed by the click, in the order they
+     * were revealed. If the cell is a mine, it is the only cell in the list.
+     */
+    public List<Cell> reveal(Cell cell) {
+        List<Cell> revealed = new ArrayList<>();
+        if (cell.alreadyClicked() || cell.isFlagged() || cell.isQuestioned()) {
+            return revealed;
+        }
+
+        if (firstReveal) {
+            firstReveal = false;
+            relocateMine(cell);
+        }
+        cell.setClicked();
+        revealed.add(cell);
+        if (cell.getState() == 1) { // cell is a mine
+            return revealed;
+        }
+        increaseNumberCleared();
+        if (cell.getNeighbourCount() != 0) {
+            return revealed;
+        }
 
+        cascade(cell, revealed);
+        return revealed;
+    }
+
+    /**
+     * Chords a revealed number: if as many of its neighbours are flagged as it
+     * has neighbouring mines, every neighbour which isn't flagged or
+     * questioned is revealed, cascading as for a normal click. The flag count
+     * is kept per cell, so no neighbours need to be counted here. If a flag
+     * was wrong, the mine under the revealed neighbour is in the list.
+     *
+     * @param cell the revealed cell to chord.
+     * @return all cells revealed by the chord.
+     */
+    public List<Cell> chord(Cell cell) {
+        List<Cell> revealed = new ArrayList<>();
+        if (!cell.alreadyClicked() || cell.getState() == 1 || cell.getNeighbourCount() == 0
+                || cell.getFlaggedNeighbourCount() != cell.getNeighbourCount()) {
+            return revealed;
+        }
+
+        int row = cell.getRow();
+        int col = cell.getCol();
+        for (int r = Math.max(0, row - 1); r <= Math.min(numberOfRows - 1, row + 1); r++) {
+            for (int c = Math.max(0, col - 1); c <= Math.min(numberOfCols - 1, col + 1); c++) {
+                Cell neighbour = mineField[r][c];
+                if (neighbour.alreadyClicked() || neighbour.isFlagged() || neighbour.isQuestioned()) {
+                    continue;
+                }
+                neighbour.setClicked();
+                revealed.add(neighbour);
+                if (neighbour.getState() == 1) {
+                    continue;
+                }
+                increaseNumberCleared();
+                if (neighbour.getNeighbourCount() == 0) {
+                    cascade(neighbour, revealed);
                 }
             }
         }
+        return revealed;
     }
 
-    public Cell[][] getMineFieldArray() {
-        return mineField;
+    /**
+     * Reveals every cell without neighbouring mines connected to the given,
+     * already revealed, empty cell. An explicit stack is used rather than
+     * recursion so large cascades can't overflow the call stack.
+     */
+    private void cascade(Cell cell, List<Cell> revealed) {
+        ArrayDeque<Cell> stack = new ArrayDeque<>();
+        stack.push(cell);
+        while (!stack.isEmpty()) {
+            Cell current = stack.pop();
+            int row = current.getRow();
+            int col = current.getCol();
+            for (int[] direction : ORTHOGONAL) {
+                int r = row + direction[0];
+                int c = col + direction[1];
+                if (r < 0 || r >= numberOfRows || c < 0 || c >= numberOfCols) {
+                    continue;
+                }
+                Cell tmpCell = mineField[r][c];
+                if (tmpCell.getState() == 0 && tmpCell.getNeighbourCount() == 0
+                        && !tmpCell.alreadyClicked() && !tmpCell.isFlagged()
+                        && !tmpCell.isQuestioned()) {
+                    tmpCell.setClicked();
+                    increaseNumberCleared();
+                    revealed.add(tmpCell);
+                    stack.push(tmpCell);
+                }
+            }
+        }
+    }
+
+    /**
+     * Toggles the protected state of a cell which hasn't been clicked (see
+     * Cell.toggleProtected) and keeps the flagged neighbour count of the
+     * surrounding cells up to date.
+     *
+     * @param cell the cell to toggle.
+     */
+    public void toggleProtected(Cell cell) {
+        boolean wasFlagged = cell.isFlagged();
+        cell.toggleProtected();
+        if (wasFlagged != cell.isFlagged()) {
+            int change = cell.isFlagged() ? 1 : -1;
+            int row = cell.getRow();
+            int col = cell.getCol();
+            for (int r = Math.max(0, row - 1); r <= Math.min(numberOfRows - 1, row + 1); r++) {
+                for (int c = Math.max(0, col - 1); c <= Math.min(numberOfCols - 1, col + 1); c++) {
+                    if (r != row || c != col) {
+                        mineField[r][c].changeFlaggedNeighbourCount(change);
+                    }
+                }
+            }
+        }
     }
 
     /**
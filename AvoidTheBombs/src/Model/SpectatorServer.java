@@ -0,0 +1,211 @@
+/*
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package Model;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Serves a live game to any number of spectators over a local socket. Each
+ * move is sent as a delta frame (see BoardDeltaEncoder).
+ *
+ * The server keeps its own copy of the board as spectators see it, a
+ * BoardDeltaDecoder which every frame sent is applied to. That costs one
+ * pass over the board per game and the size of the move per move, whether
+ * anyone is watching or not. A spectator joining is sent a keyframe of a
+ * copy taken under the server's lock, at the same moment the spectator is
+ * added, so the keyframe is followed by exactly the moves made after it.
+ * The keyframe is encoded on the spectator's own writer thread, and the
+ * cells of the live game are only ever read on the game's thread.
+ *
+ * Each spectator has its own queue, and a spectator which falls too far
+ * behind is disconnected rather than holding up the game.
+ */
+public class SpectatorServer {
+
+    public static final int DEFAULT_PORT = 4455;
+
+    private static final int QUEUE_SIZE = 1024;
+
+    private final ServerSocket serverSocket;
+    private final List<Spectator> spectators;
+    private MineField mineField;
+    private int move;
+    private final BoardDeltaDecoder board; // as the spectators see it
+
+    /**
+     * Starts listening for spectators on the loopback interface.
+     *
+     * @param port the port to listen on.
+     * @throws IOException if the port could not be opened.
+     */
+    public SpectatorServer(int port) throws IOException {
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        spectators = new CopyOnWriteArrayList<>();
+        board = new BoardDeltaDecoder();
+
+        Thread acceptThread = new Thread(this::acceptSpectators, "Spectator accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public int getNumberOfSpectators() {
+        return spectators.size();
+    }
+
+    /**
+     * Sets the game being watched. Current spectators are sent a keyframe of
+     * the new board.
+     *
+     * @param mineField the board of the new game.
+     */
+    public synchronized void setMineField(MineField mineField) {
+        this.mineField = mineField;
+        move = 0;
+        publish(BoardDeltaEncoder.encodeKeyframe(mineField, move));
+    }
+
+    /**
+     * Sends the cells changed by a move to all spectators.
+     *
+     * @param changed the cells which were revealed, flagged or unflagged.
+     */
+    public synchronized void publishMove(List<Cell> changed) {
+        if (mineField == null || changed.isEmpty()) {
+            return;
+        }
+        move++;
+        publish(BoardDeltaEncoder.encodeDelta(mineField, changed, move));
+    }
+
+    /**
+     * Reveals every mine to the spectators, as happens on the player's board
+     * when the game is lost.
+     */
+    public synchronized void publishMines() {
+        if (mineField == null) {
+            return;
+        }
+        move++;
+        publish(BoardDeltaEncoder.encodeMines(mineField, move));
+    }
+
+    /**
+     * Stops accepting spectators and disconnects the current ones.
+     */
+    public void close() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        for (Spectator spectator : spectators) {
+            spectator.close();
+        }
+    }
+
+    private void publish(byte[] frame) {
+        board.apply(frame);
+        for (Spectator spectator : spectators) {
+            if (!spectator.queue.offer(frame)) { // spectator can't keep up
+                spectator.close();
+            }
+        }
+    }
+
+    private void acceptSpectators() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Spectator spectator = new Spectator(serverSocket.accept());
+                synchronized (this) {
+                    spectator.board = board.hasBoard() ? board.copy() : null;
+                    spectators.add(spectator);
+                }
+                spectator.start();
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * A connected spectator with its own queue of frames waiting to be sent.
+     */
+    private class Spectator {
+
+        final Socket socket;
+        final BlockingQueue<byte[]> queue;
+        volatile Thread thread;
+        BoardDeltaDecoder board; // the board when the spectator joined
+
+        Spectator(Socket socket) {
+            this.socket = socket;
+            queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        }
+
+        void start() {
+            thread = new Thread(this::sendFrames, "Spectator " + socket.getRemoteSocketAddress());
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void sendFrames() {
+            try {
+                socket.setTcpNoDelay(true);
+                OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+                if (board != null) { // catch up before sending the queued moves
+                    out.write(BoardDeltaEncoder.encodeKeyframe(board));
+                    board = null;
+                }
+                while (!socket.isClosed()) {
+                    if (queue.isEmpty()) {
+                        out.flush();
+                    }
+                    out.write(queue.take());
+                }
+            } catch (IOException | InterruptedException e) {
+                // spectator went away
+            } finally {
+                close();
+            }
+        }
+
+        void close() {
+            spectators.remove(this);
+            if (thread != null) {
+                thread.interrupt();
+            }
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // already closed
+            }
+        }
+    }
+}